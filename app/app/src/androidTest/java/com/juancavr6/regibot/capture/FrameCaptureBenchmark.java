@@ -0,0 +1,113 @@
+package com.juancavr6.regibot.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.ColorSpace;
+import android.hardware.HardwareBuffer;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.juancavr6.regibot.ml.ModelHandler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the old screenshot path (Bitmap.copy + createScaledBitmap) against pooled frames
+ * rendered by HardwareFrameConverter. Reports bytes allocated and milliseconds per frame.
+ * Bitmap pixels live in the native heap, so they are added to the Java heap count.
+ * Both paths get a new HardwareBuffer per frame, as takeScreenshot does.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameCaptureBenchmark {
+
+    private static final String TAG = "FrameCaptureBenchmark";
+
+    private static final int WIDTH = 1440;
+    private static final int HEIGHT = 3120;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 30;
+
+    // Typical detector input, frames are fitted inside it
+    private static final ImageSpec DETECTOR_SPEC = new ImageSpec(320, 320, true);
+
+    private final ColorSpace colorSpace = ColorSpace.get(ColorSpace.Named.SRGB);
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void compareCopyPathWithFramePool() {
+        // Old path: software copy of the full frame plus a scaled copy for the classifier
+        for (int i = 0; i < WARMUP; i++) copyPath();
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        long pixelBytes = 0;
+        long copyNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            pixelBytes += copyPath();
+            copyNanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        long copyBytes = Debug.getThreadAllocSize() + pixelBytes;
+        Debug.stopAllocCounting();
+
+        // New path: GPU render of each model input into pooled buffers
+        HardwareFrameConverter converter = new HardwareFrameConverter();
+        FramePool pool = new FramePool(3, converter);
+        for (int i = 0; i < WARMUP; i++) assertTrue(poolPath(pool));
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        long poolNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            poolPath(pool);
+            poolNanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        long poolBytes = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+        converter.close();
+
+        Log.i(TAG, String.format(Locale.US, "copy path:  %.2f ms/frame, %d bytes/frame",
+                copyNanos / 1e6 / ITERATIONS, copyBytes / ITERATIONS));
+        Log.i(TAG, String.format(Locale.US, "frame pool: %.2f ms/frame, %d bytes/frame",
+                poolNanos / 1e6 / ITERATIONS, poolBytes / ITERATIONS));
+        Log.i(TAG, pool.report());
+
+        // The pool must not allocate anything close to a frame per capture
+        assertTrue(poolBytes / ITERATIONS < (long) WIDTH * HEIGHT * 4 / 100);
+    }
+
+    // Returns the pixel bytes allocated by the copies
+    private long copyPath() {
+        HardwareBuffer hardwareBuffer = newScreenshot();
+        Bitmap screenShot = Bitmap.wrapHardwareBuffer(hardwareBuffer, colorSpace);
+        Bitmap copy = screenShot.copy(Bitmap.Config.ARGB_8888, true);
+        Bitmap scaled = Bitmap.createScaledBitmap(copy, ModelHandler.Classifier.INPUT_SIZE,
+                ModelHandler.Classifier.INPUT_SIZE, true);
+        long bytes = copy.getAllocationByteCount() + scaled.getAllocationByteCount();
+        scaled.recycle();
+        copy.recycle();
+        hardwareBuffer.close();
+        return bytes;
+    }
+
+    private boolean poolPath(FramePool pool) {
+        Frame frame = pool.acquire(newScreenshot(), colorSpace);
+        try {
+            return frame.getLevel(ModelHandler.Classifier.INPUT_SPEC) != null
+                    && frame.getLevel(DETECTOR_SPEC) != null;
+        } finally {
+            frame.release();
+        }
+    }
+
+    private HardwareBuffer newScreenshot() {
+        return HardwareBuffer.create(WIDTH, HEIGHT, HardwareBuffer.RGBA_8888, 1,
+                HardwareBuffer.USAGE_GPU_SAMPLED_IMAGE | HardwareBuffer.USAGE_GPU_COLOR_OUTPUT);
+    }
+}
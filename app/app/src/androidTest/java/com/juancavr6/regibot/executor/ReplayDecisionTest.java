@@ -0,0 +1,131 @@
+package com.juancavr6.regibot.executor;
+
+import android.content.Context;
+import android.graphics.Rect;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.juancavr6.regibot.capture.Frame;
+import com.juancavr6.regibot.capture.FramePool;
+import com.juancavr6.regibot.capture.FrameSource;
+import com.juancavr6.regibot.capture.HardwareFrameConverter;
+import com.juancavr6.regibot.capture.ReplayFrameSource;
+import com.juancavr6.regibot.controller.SettingsController;
+import com.juancavr6.regibot.controller.TargetMatcher;
+import com.juancavr6.regibot.ml.Classification;
+import com.juancavr6.regibot.ml.Detections;
+import com.juancavr6.regibot.ml.ModelLoader;
+import com.juancavr6.regibot.utils.CustomUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Plays a recorded sequence through the models and the InferenceGate the way the loop does, and checks
+ * the decision taken on each frame against the expected ones.
+ * The frames go to the app files "replay" directory (as for the replay capture source) with an
+ * expected.txt next to them: one line per frame in play order, "<screen> [<map target>]", where the
+ * screen is the validated class ("none" if the classification is rejected) and the map target the
+ * class of the target the loop taps ("none" if there is none). Lines starting with # are skipped.
+ * Without an expected.txt the test is skipped.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReplayDecisionTest {
+
+    private static final long FRAME_TIMEOUT_MS = 5000;
+
+    @Test
+    public void recordedSequenceTakesTheExpectedDecisions() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File directory = context.getExternalFilesDir("replay");
+        File expectedFile = new File(directory, "expected.txt");
+        assumeTrue("No recorded sequence in " + directory, expectedFile.exists());
+        List<String> expected = readExpected(expectedFile);
+
+        SettingsController controller = SettingsController.getInstance(context);
+        controller.reloadAllValues();
+        ModelLoader models = new ModelLoader(context, controller);
+        models.load();
+        HardwareFrameConverter converter = new HardwareFrameConverter();
+        FramePool pool = new FramePool(3, converter);
+        ReplayFrameSource source = new ReplayFrameSource(directory, ReplayFrameSource.STEPPED, false, pool);
+        InferenceGate gate = new InferenceGate();
+
+        List<String> decisions = new ArrayList<>();
+        source.start();
+        try {
+            for (int i = 0; i < expected.size(); i++) {
+                Frame frame = nextFrame(source);
+                assertNotNull("Frame " + i + " could not be played", frame);
+                try {
+                    decisions.add(decide(controller, models, gate, frame));
+                } finally {
+                    frame.release();
+                }
+            }
+        } finally {
+            source.stop();
+            models.close();
+            pool.clear();
+            converter.close();
+        }
+        assertEquals(expected, decisions);
+    }
+
+    // The decisions of the loop on the frame, taken by the same ActionLooper methods as in runCycle and taskMapScreen
+    private static String decide(SettingsController controller, ModelLoader models, InferenceGate gate, Frame frame) {
+        gate.onFrame(frame);
+        Classification classification = gate.classify(models.getClassifier(), frame);
+        String screen = classification != null ? ActionLooper.screenOf(controller, classification) : null;
+        if (screen == null) return "none";
+        if (!"mapScreen".equals(screen)) return screen;
+
+        Rect tapRegion = CustomUtils.getTapSection(frame.getWidth(), frame.getHeight());
+        Detections map = gate.detect(models.getMapDetector(), frame, tapRegion);
+        if (map == null) return screen + " none";
+        TargetMatcher targets = controller.lookForTargetsAtMap(map);
+        int rank = ActionLooper.tappableTarget(targets, map, frame.getWidth(), frame.getHeight());
+        return screen + " " + (rank < 0 ? "none" : map.getClassName(targets.get(rank)));
+    }
+
+    private static Frame nextFrame(FrameSource source) throws Exception {
+        CompletableFuture<Frame> played = new CompletableFuture<>();
+        source.requestFrame(new FrameSource.Callback() {
+            @Override
+            public void onFrame(Frame frame) {
+                played.complete(frame);
+            }
+
+            @Override
+            public void onFailure(int errorCode) {
+                played.complete(null);
+            }
+        }, 0);
+        return played.get(FRAME_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static List<String> readExpected(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) lines.add(line.replaceAll("\\s+", " "));
+            }
+        }
+        return lines;
+    }
+}
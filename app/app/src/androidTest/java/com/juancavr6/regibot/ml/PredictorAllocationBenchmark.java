@@ -0,0 +1,108 @@
+package com.juancavr6.regibot.ml;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.Interpreter;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the old predictor call (new normalized float[] per throw, Interpreter.run on Java arrays)
+ * against Predictor.predict on its preallocated direct buffers. Reports allocations and time per call.
+ * The Interpreter binding itself may allocate a few small objects per invocation (a view of the output
+ * tensor, an iterator), so the predictor is checked against a small fixed bound rather than the old path.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PredictorAllocationBenchmark {
+
+    private static final String TAG = "PredictorAllocationBenchmark";
+
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 200;
+
+    private static final int DISPLAY_WIDTH = 1440;
+    private static final int DISPLAY_HEIGHT = 3120;
+
+    // At most a couple of small wrapper objects per call, nothing sized by the input or output
+    private static final long MAX_BYTES_PER_CALL = 128;
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void compareArrayPathWithDirectBuffers() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        // Old path: arrays built for every throw
+        Interpreter interpreter = new Interpreter(ModelHandler.loadModelFile(ModelHandler.MODEL_PREDICTOR, context),
+                RuntimeOptions.DEFAULT.toInterpreterOptions());
+        float[][] output = new float[1][2];
+        for (int i = 0; i < WARMUP; i++) arrayPath(interpreter, output, i);
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        long arrayNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            arrayPath(interpreter, output, i);
+            arrayNanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        long arrayCount = Debug.getThreadAllocCount();
+        long arrayBytes = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        // New path: preallocated direct buffers
+        ModelHandler.Predictor predictor = new ModelHandler.Predictor(ModelHandler.MODEL_PREDICTOR, context);
+        for (int i = 0; i < WARMUP; i++) bufferPath(predictor, i);
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        long bufferNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            bufferPath(predictor, i);
+            bufferNanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        long bufferCount = Debug.getThreadAllocCount();
+        long bufferBytes = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        // Both paths must predict the same throw
+        arrayPath(interpreter, output, 0);
+        interpreter.close();
+        bufferPath(predictor, 0);
+        assertEquals(output[0][0], predictor.getDeltaY(), 1e-5f);
+        assertEquals(output[0][1], predictor.getDuration(), 1e-5f);
+        predictor.close();
+
+        Log.i(TAG, String.format(Locale.US, "array path:  %.3f ms/call, %.2f allocs/call, %d bytes/call",
+                arrayNanos / 1e6 / ITERATIONS, arrayCount / (float) ITERATIONS, arrayBytes / ITERATIONS));
+        Log.i(TAG, String.format(Locale.US, "buffer path: %.3f ms/call, %.2f allocs/call, %d bytes/call",
+                bufferNanos / 1e6 / ITERATIONS, bufferCount / (float) ITERATIONS, bufferBytes / ITERATIONS));
+
+        assertTrue(bufferBytes < arrayBytes);
+        assertTrue(bufferBytes / ITERATIONS <= MAX_BYTES_PER_CALL);
+    }
+
+    private static void arrayPath(Interpreter interpreter, float[][] output, int i) {
+        float[] input = { 700f + i % 10, 1500f, 300f, 280f };
+        float[] normalized = new float[input.length];
+        normalized[0] = input[0] / DISPLAY_WIDTH;
+        normalized[1] = input[1] / DISPLAY_HEIGHT;
+        normalized[2] = input[2] / DISPLAY_WIDTH;
+        normalized[3] = input[3] / DISPLAY_HEIGHT;
+        interpreter.run(normalized, output);
+    }
+
+    private static void bufferPath(ModelHandler.Predictor predictor, int i) {
+        predictor.predict(700f + i % 10, 1500f, 300f, 280f, DISPLAY_WIDTH, DISPLAY_HEIGHT);
+    }
+}
@@ -0,0 +1,78 @@
+package com.juancavr6.regibot.capture;
+
+import android.accessibilityservice.AccessibilityService;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Frames taken one at a time with AccessibilityService.takeScreenshot, paced by a CaptureScheduler.
+ */
+public class AccessibilityFrameSource implements FrameSource {
+
+    private static final String TAG = "AccessibilityFrameSource";
+
+    private final CaptureScheduler captureScheduler;
+    private final FramePool framePool;
+
+    public AccessibilityFrameSource(AccessibilityService service, Executor executor, Handler handler,
+                                    FramePool framePool) {
+        this.captureScheduler = new CaptureScheduler(service, executor, handler);
+        this.framePool = framePool;
+    }
+
+    @Override
+    public void start() {
+        captureScheduler.resetStats();
+    }
+
+    @Override
+    public void requestFrame(Callback callback, long delayMs) {
+        captureScheduler.capture(new AccessibilityService.TakeScreenshotCallback() {
+            @Override
+            public void onSuccess(@NonNull AccessibilityService.ScreenshotResult screenshotResult) {
+                Frame frame;
+                try {
+                    // The frame owns the hardware buffer from now on, models render it on demand
+                    frame = framePool.acquire(screenshotResult.getHardwareBuffer(),
+                            screenshotResult.getColorSpace());
+                } catch (IllegalArgumentException e) {
+                    Log.e(TAG, "Capture conversion Failed");
+                    screenshotResult.getHardwareBuffer().close();
+                    callback.onFailure(AccessibilityService.ERROR_TAKE_SCREENSHOT_INTERNAL_ERROR);
+                    return;
+                }
+                callback.onFrame(frame);
+            }
+
+            @Override
+            public void onFailure(int errorCode) {
+                callback.onFailure(errorCode);
+            }
+        }, delayMs);
+    }
+
+    @Override
+    public void pause() {
+        captureScheduler.pauseStats();
+    }
+
+    @Override
+    public void resume() {
+        captureScheduler.resumeStats();
+    }
+
+    // Screenshots still queued or on their way are dropped, none reaches the loop after this
+    @Override
+    public void stop() {
+        captureScheduler.cancel();
+    }
+
+    @Override
+    public String report() {
+        return captureScheduler.report();
+    }
+}
@@ -0,0 +1,181 @@
+package com.juancavr6.regibot.capture;
+
+import android.accessibilityservice.AccessibilityService;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Display;
+
+import androidx.annotation.NonNull;
+
+import com.juancavr6.regibot.trace.TraceEvent;
+import com.juancavr6.regibot.trace.Tracer;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Schedules AccessibilityService.takeScreenshot requests around the platform rate limit.
+ * Requests are delayed until just after the minimum interval since the previous one instead of
+ * being rejected, and failed requests are retried with a delay that depends on the error code.
+ * cancel() drops every request made before it: queued ones are removed and results still on their
+ * way are discarded, their callbacks are not called.
+ */
+public class CaptureScheduler {
+
+    // Minimum time between screenshots enforced by the system (not public in the SDK)
+    public static final long MIN_INTERVAL_MS = 333;
+    private static final long WINDOW_MARGIN_MS = 5;   // Land just after the window opens, not on its edge
+    private static final long BACKOFF_BASE_MS = 50;   // First retry delay for internal errors
+    private static final int MAX_RETRIES = 3;
+    private static final int ERROR_CODES = 8;
+
+    private final AccessibilityService service;
+    private final Executor executor;
+    private final Handler handler;
+
+    private final Object token = new Object(); // Of the delayed requests, to remove them on cancel
+    private long lastRequestTime = -MIN_INTERVAL_MS;
+    private int session;                       // Requests of an older session were cancelled
+
+    // Stats
+    private long startTime = SystemClock.uptimeMillis();
+    private long pausedAt = -1;                // Stats paused since, -1 if counting
+    private long pausedTime;
+    private long requests;
+    private long captures;
+    private long retries;
+    private long delayedRequests;
+    private final long[] failures = new long[ERROR_CODES];
+
+    public CaptureScheduler(AccessibilityService service, Executor executor, Handler handler) {
+        this.service = service;
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    // Take a screenshot as soon as the platform allows it
+    public void capture(AccessibilityService.TakeScreenshotCallback callback) {
+        capture(callback, 0);
+    }
+
+    // Take a screenshot after at least delayMs, or later if the platform does not allow it yet
+    public synchronized void capture(AccessibilityService.TakeScreenshotCallback callback, long delayMs) {
+        schedule(callback, session, 0, delayMs);
+    }
+
+    // Drop the requests made so far, for a source that stops
+    public synchronized void cancel() {
+        session++;
+        handler.removeCallbacksAndMessages(token);
+    }
+
+    private synchronized void schedule(AccessibilityService.TakeScreenshotCallback callback, int requestSession,
+                                       int attempt, long delayMs) {
+        if (requestSession != session) return;
+        long now = SystemClock.uptimeMillis();
+        long windowDelay = lastRequestTime + MIN_INTERVAL_MS + WINDOW_MARGIN_MS - now;
+        long delay = Math.max(delayMs, windowDelay);
+
+        if (delay <= 0) {
+            request(callback, requestSession, attempt);
+        } else {
+            if (windowDelay > delayMs) delayedRequests++;
+            // Reserve the slot so other requests queue behind this one
+            lastRequestTime = now + delay - MIN_INTERVAL_MS - WINDOW_MARGIN_MS;
+            handler.postDelayed(() -> request(callback, requestSession, attempt), token, delay);
+        }
+    }
+
+    private synchronized void request(AccessibilityService.TakeScreenshotCallback callback, int requestSession,
+                                      int attempt) {
+        if (requestSession != session) return;
+        lastRequestTime = SystemClock.uptimeMillis();
+        requests++;
+
+        service.takeScreenshot(Display.DEFAULT_DISPLAY, executor, new AccessibilityService.TakeScreenshotCallback() {
+            @Override
+            public void onSuccess(@NonNull AccessibilityService.ScreenshotResult screenshotResult) {
+                synchronized (CaptureScheduler.this) {
+                    if (requestSession != session) {
+                        screenshotResult.getHardwareBuffer().close();
+                        return;
+                    }
+                    captures++;
+                }
+                callback.onSuccess(screenshotResult);
+            }
+
+            @Override
+            public void onFailure(int errorCode) {
+                long retryDelay;
+                synchronized (CaptureScheduler.this) {
+                    if (requestSession != session) return;
+                    if (errorCode >= 0 && errorCode < ERROR_CODES) failures[errorCode]++;
+                    retryDelay = attempt < MAX_RETRIES ? retryDelay(errorCode, attempt) : -1;
+                    if (retryDelay >= 0) retries++;
+                }
+                if (retryDelay >= 0) {
+                    Tracer.event(Log.DEBUG, TraceEvent.CAPTURE_RETRY, errorCode, retryDelay);
+                    schedule(callback, requestSession, attempt + 1, retryDelay);
+                } else {
+                    callback.onFailure(errorCode);
+                }
+            }
+        });
+    }
+
+    // Delay before retrying after an error, -1 if retrying can not help
+    private static long retryDelay(int errorCode, int attempt) {
+        switch (errorCode) {
+            case AccessibilityService.ERROR_TAKE_SCREENSHOT_INTERVAL_TIME_SHORT:
+                return 0; // schedule() waits for the next window
+            case AccessibilityService.ERROR_TAKE_SCREENSHOT_INTERNAL_ERROR:
+                return BACKOFF_BASE_MS << attempt;
+            default: // No access, invalid display or window, secure window
+                return -1;
+        }
+    }
+
+    // Successful captures per second since the last reset, not counting the time paused
+    public synchronized float getCapturesPerSecond() {
+        long now = pausedAt >= 0 ? pausedAt : SystemClock.uptimeMillis();
+        long elapsed = now - startTime - pausedTime;
+        return elapsed > 0 ? captures * 1000f / elapsed : 0f;
+    }
+
+    public synchronized void pauseStats() {
+        if (pausedAt < 0) pausedAt = SystemClock.uptimeMillis();
+    }
+
+    public synchronized void resumeStats() {
+        if (pausedAt < 0) return;
+        pausedTime += SystemClock.uptimeMillis() - pausedAt;
+        pausedAt = -1;
+    }
+
+    public static float getMaxCapturesPerSecond() {
+        return 1000f / MIN_INTERVAL_MS;
+    }
+
+    public synchronized void resetStats() {
+        startTime = SystemClock.uptimeMillis();
+        pausedAt = -1;
+        pausedTime = 0;
+        requests = captures = retries = delayedRequests = 0;
+        for (int i = 0; i < ERROR_CODES; i++) failures[i] = 0;
+    }
+
+    public synchronized String report() {
+        StringBuilder builder = new StringBuilder("CaptureScheduler requests=").append(requests)
+                .append(" captures=").append(captures)
+                .append(" retries=").append(retries)
+                .append(" delayed=").append(delayedRequests)
+                .append(String.format(Locale.US, " rate=%.2f/%.2f fps", getCapturesPerSecond(), getMaxCapturesPerSecond()))
+                .append(" failures=[");
+        for (int i = 1; i < ERROR_CODES; i++) {
+            if (failures[i] > 0) builder.append(' ').append(i).append(':').append(failures[i]);
+        }
+        return builder.append(" ]").toString();
+    }
+}
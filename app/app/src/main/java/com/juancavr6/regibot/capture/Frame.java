@@ -0,0 +1,118 @@
+package com.juancavr6.regibot.capture;
+
+import android.graphics.Bitmap;
+import android.hardware.HardwareBuffer;
+import android.util.Log;
+
+import com.juancavr6.regibot.trace.Latency;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A captured screen frame owned by a FramePool.
+ * The frame keeps the screenshot on the GPU and produces each model input (a FrameLevel)
+ * once, the first time a model asks for it; models with the same input share the result.
+ * Frames are reference counted: whoever keeps a frame beyond the call that handed it over
+ * must retain() it and release() it when done. The last release returns it to the pool.
+ */
+public class Frame {
+
+    private static final String TAG = "Frame";
+
+    private final FramePool pool;
+    private final HardwareFrameConverter converter;
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    // Preprocessed images, buffers survive recycling
+    private final Map<ImageSpec, FrameLevel> levels = new HashMap<>();
+
+    private HardwareBuffer hardwareBuffer;
+    private Bitmap source;
+    private AutoCloseable owner;
+    private long frameId;
+    private long timestamp;
+
+    Frame(FramePool pool, HardwareFrameConverter converter) {
+        this.pool = pool;
+        this.converter = converter;
+    }
+
+    // Called by the pool when the frame is handed out
+    void reset(long frameId, long timestamp, HardwareBuffer hardwareBuffer, Bitmap source, AutoCloseable owner) {
+        this.frameId = frameId;
+        this.timestamp = timestamp;
+        this.hardwareBuffer = hardwareBuffer;
+        this.source = source;
+        this.owner = owner;
+        refCount.set(1);
+    }
+
+    // Called by the pool when the last reference is released
+    synchronized void clear() {
+        for (FrameLevel level : levels.values()) level.ready = false;
+        source = null;
+        if (hardwareBuffer != null) hardwareBuffer.close();
+        hardwareBuffer = null;
+        if (owner != null) {
+            try {
+                owner.close();
+            } catch (Exception e) {
+                Log.e(TAG, "clear(): owner close failed", e);
+            }
+        }
+        owner = null;
+    }
+
+    public Frame retain() {
+        if (refCount.getAndIncrement() <= 0)
+            throw new IllegalStateException("retain() on a released frame " + frameId);
+        return this;
+    }
+
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) pool.recycle(this);
+        else if (count < 0) throw new IllegalStateException("Frame " + frameId + " released too many times");
+    }
+
+    /**
+     * Get the frame preprocessed for the given spec, rendering it if no model asked for it yet.
+     * Returns null if the frame could not be rendered. Valid until the frame is released.
+     */
+    public synchronized FrameLevel getLevel(ImageSpec spec) {
+        if (source == null) return null;
+
+        FrameLevel level = levels.get(spec);
+        if (level == null) {
+            level = new FrameLevel(spec);
+            levels.put(spec, level);
+        }
+        if (!level.ready) {
+            level.prepare(source.getWidth(), source.getHeight());
+            long start = Latency.start();
+            level.ready = converter.render(source, level.getCrop(),
+                    level.getWidth(), level.getHeight(), level.getBuffer());
+            Latency.record(Latency.Stage.CONVERT, start);
+            if (!level.ready) return null;
+        }
+        return level;
+    }
+
+    public int getWidth() {
+        return source != null ? source.getWidth() : 0;
+    }
+
+    public int getHeight() {
+        return source != null ? source.getHeight() : 0;
+    }
+
+    public long getFrameId() {
+        return frameId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,140 @@
+package com.juancavr6.regibot.capture;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap screen change detection between consecutive frames.
+ * Each frame is reduced on the GPU to a tiny luma signature that is compared with the one of the
+ * previous frame, telling whether the models can reuse their last results, only need to look at
+ * the changed part of the screen, or need to run on the whole frame.
+ */
+public class FrameChangeDetector {
+
+    public static final int UNCHANGED = 0;
+    public static final int PARTIAL = 1;
+    public static final int CHANGED = 2;
+
+    private static final int SIGNATURE_WIDTH = 24;
+    private static final int SIGNATURE_HEIGHT = 48;
+    public static final ImageSpec SIGNATURE_SPEC = new ImageSpec(SIGNATURE_WIDTH, SIGNATURE_HEIGHT, false);
+
+    private static final int CELL_THRESHOLD = 12;          // Luma difference for a cell to count as changed
+    private static final float MINOR_FRACTION = 0.005f;     // Changed cells that do not change the screen shown
+    private static final float PARTIAL_FRACTION = 0.4f;     // Max changed area for a partial update
+    private static final int MARGIN_CELLS = 2;              // Margin around the changed cells
+
+    private int[] previous = new int[SIGNATURE_WIDTH * SIGNATURE_HEIGHT];
+    private int[] current = new int[SIGNATURE_WIDTH * SIGNATURE_HEIGHT];
+    private boolean hasPrevious;
+    private long lastFrameId = -1;
+    private long previousFrameId = -1;
+
+    private final int[] bounds = new int[4]; // Changed cells as {minX, minY, maxX, maxY}
+    private int changedCells;
+    private final Rect changedRegion = new Rect();
+
+    /**
+     * Compare the frame with the previous one passed to this method.
+     * Returns UNCHANGED only if no cell changed, so even a small moving object is looked at again;
+     * PARTIAL (see getChangedRegion()) or CHANGED otherwise.
+     */
+    public int compare(Frame frame) {
+        previousFrameId = lastFrameId;
+        lastFrameId = frame.getFrameId();
+
+        FrameLevel level = frame.getLevel(SIGNATURE_SPEC);
+        if (level == null) {
+            hasPrevious = false;
+            return CHANGED;
+        }
+        computeSignature(level.getBuffer(), current);
+
+        int result = CHANGED;
+        changedCells = current.length;
+        if (hasPrevious) {
+            changedCells = changedCells(previous, current, bounds);
+            result = classify(changedCells, bounds);
+            if (result == PARTIAL) {
+                int width = frame.getWidth();
+                int height = frame.getHeight();
+                changedRegion.set(bounds[0] * width / SIGNATURE_WIDTH, bounds[1] * height / SIGNATURE_HEIGHT,
+                        (bounds[2] + 1) * width / SIGNATURE_WIDTH, (bounds[3] + 1) * height / SIGNATURE_HEIGHT);
+            }
+        }
+
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        hasPrevious = true;
+        return result;
+    }
+
+    // Id of the frame compared before the last one, -1 if there was none
+    public long getPreviousFrameId() {
+        return previousFrameId;
+    }
+
+    // Changed part of the frame in frame pixels, valid after compare() returned PARTIAL
+    public Rect getChangedRegion() {
+        return changedRegion;
+    }
+
+    // True if so few cells changed in the last compare() that the screen shown is still the same
+    public boolean isMinorChange() {
+        return changedCells <= SIGNATURE_WIDTH * SIGNATURE_HEIGHT * MINOR_FRACTION;
+    }
+
+    public void reset() {
+        hasPrevious = false;
+        lastFrameId = -1;
+        previousFrameId = -1;
+        changedCells = SIGNATURE_WIDTH * SIGNATURE_HEIGHT;
+    }
+
+    private static void computeSignature(ByteBuffer pixels, int[] signature) {
+        for (int i = 0; i < signature.length; i++) {
+            int offset = i * 4;
+            int r = pixels.get(offset) & 0xFF;
+            int g = pixels.get(offset + 1) & 0xFF;
+            int b = pixels.get(offset + 2) & 0xFF;
+            signature[i] = (r * 77 + g * 150 + b * 29) >> 8;
+        }
+    }
+
+    // Number of cells that changed between two signatures, their bounding box goes to bounds
+    static int changedCells(int[] previous, int[] current, int[] bounds) {
+        int changed = 0;
+        int minX = SIGNATURE_WIDTH, minY = SIGNATURE_HEIGHT, maxX = -1, maxY = -1;
+        for (int y = 0; y < SIGNATURE_HEIGHT; y++) {
+            for (int x = 0; x < SIGNATURE_WIDTH; x++) {
+                int i = y * SIGNATURE_WIDTH + x;
+                if (Math.abs(current[i] - previous[i]) > CELL_THRESHOLD) {
+                    changed++;
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    if (y > maxY) maxY = y;
+                }
+            }
+        }
+        bounds[0] = minX;
+        bounds[1] = minY;
+        bounds[2] = maxX;
+        bounds[3] = maxY;
+        return changed;
+    }
+
+    // UNCHANGED, PARTIAL or CHANGED for the changed cells, for PARTIAL the bounds grow by the margin
+    static int classify(int changed, int[] bounds) {
+        if (changed == 0) return UNCHANGED;
+
+        bounds[0] = Math.max(0, bounds[0] - MARGIN_CELLS);
+        bounds[1] = Math.max(0, bounds[1] - MARGIN_CELLS);
+        bounds[2] = Math.min(SIGNATURE_WIDTH - 1, bounds[2] + MARGIN_CELLS);
+        bounds[3] = Math.min(SIGNATURE_HEIGHT - 1, bounds[3] + MARGIN_CELLS);
+        int area = (bounds[2] - bounds[0] + 1) * (bounds[3] - bounds[1] + 1);
+        return area > SIGNATURE_WIDTH * SIGNATURE_HEIGHT * PARTIAL_FRACTION ? CHANGED : PARTIAL;
+    }
+}
@@ -0,0 +1,101 @@
+package com.juancavr6.regibot.capture;
+
+import android.graphics.Rect;
+
+import com.google.mediapipe.framework.image.ByteBufferImageBuilder;
+import com.google.mediapipe.framework.image.MPImage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * One preprocessed image of a frame, scaled to the input of one or more models.
+ * The pixel buffer is kept when the frame is recycled and reused by the next frame.
+ */
+public class FrameLevel {
+
+    private final ImageSpec spec;
+
+    private ByteBuffer buffer;
+    private MPImage image;
+    private int width;
+    private int height;
+    private int sourceWidth;  // Size of the frame the level was last prepared for
+    private int sourceHeight;
+
+    // Region of the frame this level was rendered from
+    private final Rect crop = new Rect();
+
+    // Factors to map level coordinates back to frame coordinates
+    private float scaleX;
+    private float scaleY;
+
+    boolean ready;
+
+    FrameLevel(ImageSpec spec) {
+        this.spec = spec;
+    }
+
+    // Adapt the level to the size of the source frame, reallocating only when it grows. Nothing to do
+    // for frames of the size of the last one, which is every frame of a capture session
+    void prepare(int sourceWidth, int sourceHeight) {
+        if (sourceWidth == this.sourceWidth && sourceHeight == this.sourceHeight) return;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        spec.crop(sourceWidth, sourceHeight, crop);
+        int outputWidth = spec.outputWidth(crop.width(), crop.height());
+        int outputHeight = spec.outputHeight(crop.width(), crop.height());
+        if (outputWidth != width || outputHeight != height) {
+            width = outputWidth;
+            height = outputHeight;
+            int bytes = width * height * 4;
+            if (buffer == null || buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            }
+            image = new ByteBufferImageBuilder(buffer, width, height, MPImage.IMAGE_FORMAT_RGBA).build();
+        }
+        scaleX = (float) crop.width() / width;
+        scaleY = (float) crop.height() / height;
+    }
+
+    Rect getCrop() {
+        return crop;
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public ImageSpec getSpec() {
+        return spec;
+    }
+
+    public MPImage getImage() {
+        return image;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getScaleX() {
+        return scaleX;
+    }
+
+    public float getScaleY() {
+        return scaleY;
+    }
+
+    // Frame position of the level origin
+    public float getOffsetX() {
+        return crop.left;
+    }
+
+    public float getOffsetY() {
+        return crop.top;
+    }
+}
@@ -0,0 +1,114 @@
+package com.juancavr6.regibot.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.ColorSpace;
+import android.hardware.HardwareBuffer;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+
+/**
+ * Fixed ring of reusable frames shared by the capture callback, the models and the debug overlay.
+ * When every pooled frame is in use a temporary frame is allocated and counted as a miss;
+ * temporary frames are dropped on release instead of being returned to the ring.
+ */
+public class FramePool {
+
+    private final int capacity;
+    private final HardwareFrameConverter converter;
+
+    private final ArrayDeque<Frame> freeFrames;
+    private int pooledFrames;
+
+    private long nextFrameId;
+    private int liveFrames;
+
+    // Stats
+    private long hits;
+    private long misses;
+    private int peakLiveFrames;
+
+    public FramePool(int capacity, HardwareFrameConverter converter) {
+        this.capacity = capacity;
+        this.converter = converter;
+        this.freeFrames = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Get a frame wrapping the screenshot with a reference count of one. The caller must release() it.
+     * The frame takes ownership of the HardwareBuffer and closes it when recycled.
+     */
+    public Frame acquire(HardwareBuffer hardwareBuffer, ColorSpace colorSpace) {
+        return acquire(hardwareBuffer, colorSpace, null);
+    }
+
+    /**
+     * Same as acquire(HardwareBuffer, ColorSpace), the owner of the buffer (an ImageReader image)
+     * is closed together with it when the frame is recycled.
+     */
+    public Frame acquire(HardwareBuffer hardwareBuffer, ColorSpace colorSpace, AutoCloseable owner) {
+        // Wrapping does not copy the pixels, they stay on the GPU
+        Bitmap source = Bitmap.wrapHardwareBuffer(hardwareBuffer, colorSpace);
+        if (source == null) throw new IllegalArgumentException("Unsupported HardwareBuffer");
+        return obtain(hardwareBuffer, source, owner);
+    }
+
+    /**
+     * Get a frame over an already decoded bitmap, used to replay recorded frames.
+     * The owner, if any, is closed when the frame is recycled.
+     */
+    public Frame acquire(Bitmap source, AutoCloseable owner) {
+        return obtain(null, source, owner);
+    }
+
+    private synchronized Frame obtain(HardwareBuffer hardwareBuffer, Bitmap source, AutoCloseable owner) {
+        Frame frame = freeFrames.poll();
+        if (frame != null) {
+            hits++;
+        } else {
+            misses++;
+            frame = new Frame(this, converter);
+            if (pooledFrames < capacity) pooledFrames++;
+        }
+
+        liveFrames++;
+        peakLiveFrames = Math.max(peakLiveFrames, liveFrames);
+        frame.reset(nextFrameId++, SystemClock.elapsedRealtime(), hardwareBuffer, source, owner);
+        return frame;
+    }
+
+    void recycle(Frame frame) {
+        frame.clear();
+        synchronized (this) {
+            liveFrames--;
+            if (freeFrames.size() < pooledFrames) freeFrames.push(frame);
+        }
+    }
+
+    // Drop the free frames so their buffers can be collected
+    public synchronized void clear() {
+        freeFrames.clear();
+        pooledFrames = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int getPeakLiveFrames() {
+        return peakLiveFrames;
+    }
+
+    public synchronized int getLiveFrames() {
+        return liveFrames;
+    }
+
+    public synchronized String report() {
+        return "FramePool hits=" + hits + " misses=" + misses
+                + " live=" + liveFrames + " peakLive=" + peakLiveFrames + "/" + capacity;
+    }
+}
@@ -0,0 +1,34 @@
+package com.juancavr6.regibot.capture;
+
+/**
+ * Where the action loop gets its screen frames from.
+ */
+public interface FrameSource {
+
+    interface Callback {
+        // The receiver owns one reference to the frame and must release() it
+        void onFrame(Frame frame);
+
+        void onFailure(int errorCode);
+    }
+
+    // Error code reported when the source is not running
+    int ERROR_NOT_RUNNING = -1;
+
+    void start();
+
+    /**
+     * Ask for a frame of the screen as it is at least delayMs from now.
+     * The callback may be invoked on any thread.
+     */
+    void requestFrame(Callback callback, long delayMs);
+
+    // The loop is paused, the rate stats of the source stop counting until resume()
+    default void pause() {}
+
+    default void resume() {}
+
+    void stop();
+
+    String report();
+}
@@ -0,0 +1,130 @@
+package com.juancavr6.regibot.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.HardwareRenderer;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.RecordingCanvas;
+import android.graphics.Rect;
+import android.graphics.RenderNode;
+import android.hardware.HardwareBuffer;
+import android.media.Image;
+import android.media.ImageReader;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts screenshots into RGBA pixels that MediaPipe can read.
+ * The source bitmap is drawn by the GPU, already scaled to the model input, into an ImageReader
+ * surface and copied into a reused direct buffer. Scaling on the GPU replaces the CPU
+ * createScaledBitmap passes and the resize MediaPipe would do on a full resolution frame.
+ */
+public class HardwareFrameConverter {
+
+    private static final String TAG = "HardwareFrameConverter";
+    private static final Paint FILTER_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // One GPU surface per output size
+    private final Map<Long, Target> targets = new HashMap<>();
+
+    /**
+     * Draw the crop of the source scaled to width x height into the buffer.
+     * Returns false if the result could not be read back.
+     */
+    public synchronized boolean render(Bitmap source, Rect crop, int width, int height, ByteBuffer buffer) {
+        long key = ((long) width << 32) | height;
+        Target target = targets.get(key);
+        if (target == null) {
+            target = new Target(width, height);
+            targets.put(key, target);
+        }
+        return target.render(source, crop, buffer);
+    }
+
+    public synchronized void close() {
+        for (Target target : targets.values()) target.close();
+        targets.clear();
+    }
+
+    /**
+     * A GPU surface of a fixed size whose pixels are read back into a direct buffer.
+     */
+    static class Target {
+        final int width;
+        final int height;
+
+        private final ImageReader imageReader;
+        private final HardwareRenderer renderer;
+        private final RenderNode renderNode;
+
+        Target(int width, int height) {
+            this.width = width;
+            this.height = height;
+
+            imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, 2,
+                    HardwareBuffer.USAGE_CPU_READ_OFTEN | HardwareBuffer.USAGE_GPU_COLOR_OUTPUT);
+            renderNode = new RenderNode(TAG);
+            renderNode.setPosition(0, 0, width, height);
+            renderer = new HardwareRenderer();
+            renderer.setContentRoot(renderNode);
+            renderer.setSurface(imageReader.getSurface());
+        }
+
+        // Draw the crop of the bitmap scaled to this target and copy the result into the buffer
+        boolean render(Bitmap bitmap, Rect crop, ByteBuffer buffer) {
+            RecordingCanvas canvas = renderNode.beginRecording(width, height);
+            try {
+                canvas.save();
+                canvas.scale((float) width / crop.width(), (float) height / crop.height());
+                canvas.translate(-crop.left, -crop.top);
+                canvas.drawBitmap(bitmap, 0, 0, FILTER_PAINT);
+                canvas.restore();
+            } finally {
+                renderNode.endRecording();
+            }
+            renderer.createRenderRequest().setWaitForPresent(true).syncAndDraw();
+
+            Image result = imageReader.acquireLatestImage();
+            if (result == null) {
+                Log.e(TAG, "render(): no image available");
+                return false;
+            }
+            try {
+                copyPlane(result.getPlanes()[0], buffer);
+            } finally {
+                result.close();
+            }
+            return true;
+        }
+
+        private void copyPlane(Image.Plane plane, ByteBuffer buffer) {
+            ByteBuffer source = plane.getBuffer();
+            int rowBytes = width * 4;
+            int rowStride = plane.getRowStride();
+
+            buffer.clear();
+            if (rowStride == rowBytes) {
+                source.limit(Math.min(source.capacity(), rowBytes * height));
+                buffer.put(source);
+            } else {
+                // Rows are padded, copy them one by one skipping the padding
+                for (int row = 0; row < height; row++) {
+                    int offset = row * rowStride;
+                    source.limit(offset + rowBytes);
+                    source.position(offset);
+                    buffer.put(source);
+                }
+            }
+            buffer.rewind();
+        }
+
+        void close() {
+            renderer.destroy();
+            renderNode.discardDisplayList();
+            imageReader.close();
+        }
+    }
+}
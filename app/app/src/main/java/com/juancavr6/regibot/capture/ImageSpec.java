@@ -0,0 +1,104 @@
+package com.juancavr6.regibot.capture;
+
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Describes the input a model expects from a frame: an optional region of interest of the
+ * frame, scaled to the model input size.
+ * Models with equal specs share the same preprocessed image of a frame.
+ */
+public final class ImageSpec {
+
+    // Original frame size, no scaling
+    public static final ImageSpec FULL_FRAME = new ImageSpec(0, 0, true);
+
+    private final int width;
+    private final int height;
+    private final boolean keepAspectRatio;
+    private final Rect region; // Frame pixels, null for the whole frame
+
+    /**
+     * @param keepAspectRatio true to fit the frame inside width x height keeping its proportions
+     *                        (what MediaPipe does internally), false to stretch it.
+     */
+    public ImageSpec(int width, int height, boolean keepAspectRatio) {
+        this(width, height, keepAspectRatio, null);
+    }
+
+    private ImageSpec(int width, int height, boolean keepAspectRatio, Rect region) {
+        this.width = width;
+        this.height = height;
+        this.keepAspectRatio = keepAspectRatio;
+        this.region = region;
+    }
+
+    // Same input size restricted to a region of the frame, in frame pixels
+    public ImageSpec withRegion(Rect region) {
+        return new ImageSpec(width, height, keepAspectRatio, region != null ? new Rect(region) : null);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean keepsAspectRatio() {
+        return keepAspectRatio;
+    }
+
+    public boolean isFullFrame() {
+        return width <= 0 || height <= 0;
+    }
+
+    // Part of a source of the given size that this spec reads
+    void crop(int sourceWidth, int sourceHeight, Rect out) {
+        out.set(0, 0, sourceWidth, sourceHeight);
+        if (region != null && !out.intersect(region)) out.set(0, 0, sourceWidth, sourceHeight);
+    }
+
+    // Width of the output for a crop of the given size
+    int outputWidth(int cropWidth, int cropHeight) {
+        if (isFullFrame()) return cropWidth;
+        if (!keepAspectRatio) return width;
+        return Math.max(1, Math.round(cropWidth * fitScale(cropWidth, cropHeight)));
+    }
+
+    // Height of the output for a crop of the given size
+    int outputHeight(int cropWidth, int cropHeight) {
+        if (isFullFrame()) return cropHeight;
+        if (!keepAspectRatio) return height;
+        return Math.max(1, Math.round(cropHeight * fitScale(cropWidth, cropHeight)));
+    }
+
+    // Scale that fits the crop inside the input size, never upscaling
+    private float fitScale(int cropWidth, int cropHeight) {
+        return Math.min(1f, Math.min((float) width / cropWidth, (float) height / cropHeight));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ImageSpec)) return false;
+        ImageSpec other = (ImageSpec) o;
+        return width == other.width && height == other.height && keepAspectRatio == other.keepAspectRatio
+                && (region == null ? other.region == null : region.equals(other.region));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = (width * 31 + height) * 2 + (keepAspectRatio ? 1 : 0);
+        return region == null ? hash : hash * 31 + region.hashCode();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        String size = isFullFrame() ? "full" : width + "x" + height + (keepAspectRatio ? "" : " stretched");
+        return region == null ? size : size + " of " + region.toShortString();
+    }
+}
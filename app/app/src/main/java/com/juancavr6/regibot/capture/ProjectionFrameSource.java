@@ -0,0 +1,235 @@
+package com.juancavr6.regibot.capture;
+
+import android.graphics.ColorSpace;
+import android.graphics.PixelFormat;
+import android.hardware.HardwareBuffer;
+import android.hardware.display.DisplayManager;
+import android.hardware.display.VirtualDisplay;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.projection.MediaProjection;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Frames streamed continuously from a MediaProjection VirtualDisplay into an ImageReader.
+ * The ImageReader recycles its buffers, the newest image is kept as a frame and handed out on
+ * request, so the loop is not limited by the takeScreenshot rate. Requests waiting together (a
+ * prefetch and a capture) all get the same frame.
+ * The projection can only be used once: after stop(), or after the user or the system stopped it,
+ * the source does not run again (see isRunning()).
+ */
+public class ProjectionFrameSource implements FrameSource {
+
+    private static final String TAG = "ProjectionFrameSource";
+
+    private static final int MAX_IMAGES = 5;          // Pooled frames plus the newest image
+    private static final long STATIC_SCREEN_MS = 100; // No new image by then means the screen did not change
+
+    private final MediaProjection projection;
+    private final FramePool framePool;
+    private final int width;
+    private final int height;
+    private final int densityDpi;
+    private final ColorSpace colorSpace = ColorSpace.get(ColorSpace.Named.SRGB);
+
+    private HandlerThread thread;
+    private Handler handler;
+    private ImageReader imageReader;
+    private VirtualDisplay virtualDisplay;
+    private boolean running; // Guarded by this
+
+    // Guarded by this
+    private Frame latestFrame;
+    private final List<Callback> pendingCallbacks = new ArrayList<>();
+    private int requestId;
+
+    // Stats
+    private long images;
+    private long delivered;
+    private long staticDelivered;
+    private long droppedImages;
+    private long startTime;
+
+    public ProjectionFrameSource(MediaProjection projection, int width, int height, int densityDpi,
+                                 FramePool framePool) {
+        this.projection = projection;
+        this.width = width;
+        this.height = height;
+        this.densityDpi = densityDpi;
+        this.framePool = framePool;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        startTime = SystemClock.uptimeMillis();
+
+        thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+
+        // Required before creating the display since Android 14
+        projection.registerCallback(new MediaProjection.Callback() {
+            @Override
+            public void onStop() {
+                ProjectionFrameSource.this.stop();
+            }
+        }, handler);
+
+        imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, MAX_IMAGES,
+                HardwareBuffer.USAGE_GPU_SAMPLED_IMAGE);
+        imageReader.setOnImageAvailableListener(reader -> onImageAvailable(), handler);
+        virtualDisplay = projection.createVirtualDisplay(TAG, width, height, densityDpi,
+                DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR, imageReader.getSurface(), null, handler);
+    }
+
+    // On the handler thread, like the teardown of stop(), so the reader is not closed under it
+    private void onImageAvailable() {
+        synchronized (this) {
+            if (!running) return;
+        }
+        Image image;
+        try {
+            image = imageReader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            // Every image is held by a frame, the next one will replace this one
+            synchronized (this) {
+                droppedImages++;
+            }
+            return;
+        }
+        if (image == null) return;
+
+        HardwareBuffer hardwareBuffer = image.getHardwareBuffer();
+        if (hardwareBuffer == null) {
+            image.close();
+            return;
+        }
+        Frame frame;
+        try {
+            frame = framePool.acquire(hardwareBuffer, colorSpace, image);
+        } catch (IllegalArgumentException e) {
+            hardwareBuffer.close();
+            image.close();
+            return;
+        }
+
+        List<Callback> callbacks;
+        synchronized (this) {
+            if (!running) {
+                // Stopped while acquiring, stop() already released the latest frame
+                frame.release();
+                return;
+            }
+            images++;
+            if (latestFrame != null) latestFrame.release();
+            latestFrame = frame;
+            callbacks = takePendingCallbacks();
+        }
+        deliver(callbacks, frame);
+    }
+
+    @Override
+    public void requestFrame(Callback callback, long delayMs) {
+        Handler handler;
+        synchronized (this) {
+            handler = this.handler;
+            if (!running) handler = null;
+        }
+        if (handler == null) {
+            callback.onFailure(ERROR_NOT_RUNNING);
+            return;
+        }
+
+        handler.postDelayed(() -> {
+            int id;
+            synchronized (this) {
+                if (!running) {
+                    id = -1;
+                } else {
+                    pendingCallbacks.add(callback);
+                    id = ++requestId;
+                }
+            }
+            if (id < 0) {
+                callback.onFailure(ERROR_NOT_RUNNING);
+                return;
+            }
+            // The display only produces images when the screen changes
+            this.handler.postDelayed(() -> deliverStatic(id), STATIC_SCREEN_MS);
+        }, delayMs);
+    }
+
+    private void deliverStatic(int id) {
+        List<Callback> callbacks;
+        Frame frame;
+        synchronized (this) {
+            if (id != requestId || pendingCallbacks.isEmpty() || latestFrame == null) return;
+            staticDelivered++;
+            frame = latestFrame;
+            callbacks = takePendingCallbacks();
+        }
+        deliver(callbacks, frame);
+    }
+
+    // Must hold the lock, retains the latest frame once per callback. Null if none is waiting
+    private List<Callback> takePendingCallbacks() {
+        if (pendingCallbacks.isEmpty()) return null;
+        List<Callback> callbacks = new ArrayList<>(pendingCallbacks);
+        pendingCallbacks.clear();
+        for (int i = 0; i < callbacks.size(); i++) latestFrame.retain();
+        delivered += callbacks.size();
+        return callbacks;
+    }
+
+    private static void deliver(List<Callback> callbacks, Frame frame) {
+        if (callbacks == null) return;
+        for (Callback callback : callbacks) callback.onFrame(frame);
+    }
+
+    // False once stopped, also when the projection was stopped by the user or the system
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void stop() {
+        List<Callback> callbacks;
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+            callbacks = new ArrayList<>(pendingCallbacks);
+            pendingCallbacks.clear();
+            if (latestFrame != null) latestFrame.release();
+            latestFrame = null;
+        }
+        Log.d(TAG, report());
+        for (Callback callback : callbacks) callback.onFailure(ERROR_NOT_RUNNING);
+
+        // Torn down on the handler thread, after any image callback already running there
+        VirtualDisplay virtualDisplay = this.virtualDisplay;
+        ImageReader imageReader = this.imageReader;
+        handler.post(() -> {
+            virtualDisplay.release();
+            imageReader.close();
+            projection.stop();
+        });
+        thread.quitSafely();
+    }
+
+    @Override
+    public synchronized String report() {
+        long elapsed = SystemClock.uptimeMillis() - startTime;
+        return "ProjectionFrameSource images=" + images + " delivered=" + delivered
+                + " static=" + staticDelivered + " dropped=" + droppedImages
+                + String.format(Locale.US, " rate=%.2f fps", elapsed > 0 ? images * 1000f / elapsed : 0f);
+    }
+}
@@ -0,0 +1,214 @@
+package com.juancavr6.regibot.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Frames read from a directory of recorded screens, played back at a fixed rate like a live screen:
+ * a request gets the recorded frame that is "on screen" at that moment, so a slow loop skips frames.
+ * Files are played in name order. PNG and JPEG files are decoded with BitmapFactory; raw files
+ * (.rgba) hold RGBA_8888 pixels and carry their size in the name, e.g. frame_0001_1080x2400.rgba.
+ * At the STEPPED rate every request gets the next frame instead, so a test sees each recorded frame
+ * once and in order whatever the speed of the device.
+ * The pipeline behind it uses Android graphics and MediaPipe, so replay runs on a device or an
+ * emulator of one of the ABIs the app is built for, not on a plain JVM.
+ */
+public class ReplayFrameSource implements FrameSource {
+
+    private static final String TAG = "ReplayFrameSource";
+
+    // Error code reported once every frame was played and looping is off
+    public static final int ERROR_END_OF_REPLAY = -2;
+
+    // Rate that plays one frame per request
+    public static final float STEPPED = 0;
+
+    private static final Pattern RAW_SIZE = Pattern.compile("(\\d+)x(\\d+)\\.rgba$");
+
+    private final File directory;
+    private final long frameIntervalMs; // 0 when stepped
+    private final boolean loop;
+    private final FramePool framePool;
+
+    private final List<File> files = new ArrayList<>();
+    private HandlerThread thread;
+    private Handler handler;
+    private boolean running;
+    private long startTime;
+
+    // Only used on the replay thread
+    private Frame latestFrame;
+    private int latestIndex = -1;
+    private int nextIndex;   // Stepped
+
+    // Stats
+    private long requests;
+    private long decoded;
+    private long skipped;
+    private long decodeNanos;
+
+    public ReplayFrameSource(File directory, float framesPerSecond, boolean loop, FramePool framePool) {
+        this.directory = directory;
+        this.frameIntervalMs = framesPerSecond <= STEPPED ? 0 : Math.max(1, Math.round(1000 / framesPerSecond));
+        this.loop = loop;
+        this.framePool = framePool;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+
+        files.clear();
+        File[] listed = directory != null ? directory.listFiles((dir, name) -> isFrameFile(name)) : null;
+        if (listed != null) {
+            Arrays.sort(listed);
+            files.addAll(Arrays.asList(listed));
+        }
+        Log.d(TAG, "start(): " + files.size() + " frames in " + directory);
+
+        thread = new HandlerThread(TAG);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        running = true;
+        startTime = SystemClock.uptimeMillis();
+        nextIndex = 0;
+        requests = decoded = skipped = decodeNanos = 0;
+    }
+
+    @Override
+    public void requestFrame(Callback callback, long delayMs) {
+        Handler handler;
+        synchronized (this) {
+            handler = running ? this.handler : null;
+        }
+        if (handler == null || files.isEmpty()) {
+            callback.onFailure(ERROR_NOT_RUNNING);
+            return;
+        }
+        handler.postDelayed(() -> deliver(callback), delayMs);
+    }
+
+    // Runs on the replay thread
+    private void deliver(Callback callback) {
+        long now = SystemClock.uptimeMillis();
+        int index = frameIntervalMs > 0 ? (int) ((now - startTime) / frameIntervalMs) : nextIndex++;
+        synchronized (this) {
+            requests++;
+        }
+
+        if (index >= files.size()) {
+            if (!loop) {
+                callback.onFailure(ERROR_END_OF_REPLAY);
+                return;
+            }
+            index %= files.size();
+        }
+
+        if (index != latestIndex) {
+            Frame frame = load(files.get(index));
+            if (frame == null) {
+                callback.onFailure(ERROR_NOT_RUNNING);
+                return;
+            }
+            synchronized (this) {
+                if (latestIndex >= 0 && index > latestIndex + 1) skipped += index - latestIndex - 1;
+            }
+            if (latestFrame != null) latestFrame.release();
+            latestFrame = frame;
+            latestIndex = index;
+        }
+        callback.onFrame(latestFrame.retain());
+    }
+
+    private Frame load(File file) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        Bitmap bitmap;
+        try {
+            bitmap = file.getName().endsWith(".rgba") ? decodeRaw(file) : decodeImage(file);
+        } catch (IOException e) {
+            Log.e(TAG, "load(): cannot read " + file, e);
+            return null;
+        }
+        if (bitmap == null) {
+            Log.e(TAG, "load(): cannot decode " + file);
+            return null;
+        }
+        synchronized (this) {
+            decoded++;
+            decodeNanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        return framePool.acquire(bitmap, bitmap::recycle);
+    }
+
+    private Bitmap decodeImage(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    private Bitmap decodeRaw(File file) throws IOException {
+        Matcher matcher = RAW_SIZE.matcher(file.getName());
+        if (!matcher.find()) throw new IOException("No size in the name of " + file.getName());
+        int width = Integer.parseInt(matcher.group(1));
+        int height = Integer.parseInt(matcher.group(2));
+
+        try (FileInputStream input = new FileInputStream(file);
+             FileChannel channel = input.getChannel()) {
+            if (channel.size() < (long) width * height * 4) throw new IOException("Truncated frame " + file.getName());
+            ByteBuffer pixels = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) width * height * 4);
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(pixels);
+            return bitmap;
+        }
+    }
+
+    private static boolean isFrameFile(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg")
+                || RAW_SIZE.matcher(lower).find();
+    }
+
+    @Override
+    public void stop() {
+        Handler handler;
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+            handler = this.handler;
+        }
+        Log.d(TAG, report());
+        // Let pending deliveries finish before dropping the last frame
+        handler.post(() -> {
+            if (latestFrame != null) latestFrame.release();
+            latestFrame = null;
+            latestIndex = -1;
+        });
+        thread.quitSafely();
+    }
+
+    @Override
+    public synchronized String report() {
+        long elapsed = SystemClock.uptimeMillis() - startTime;
+        return "ReplayFrameSource frames=" + files.size() + " requests=" + requests
+                + " decoded=" + decoded + " skipped=" + skipped
+                + String.format(Locale.US, " decode=%.2f ms", decoded > 0 ? decodeNanos / 1e6 / decoded : 0.0)
+                + String.format(Locale.US, " loopRate=%.2f req/s", elapsed > 0 ? requests * 1000f / elapsed : 0f)
+                + " playback=" + (frameIntervalMs > 0 ? (1000 / frameIntervalMs) + " fps" : "stepped");
+    }
+}
@@ -2,18 +2,34 @@ package com.juancavr6.regibot.controller;
 
 import android.content.Context;
 
-import com.juancavr6.regibot.ml.ModelHandler;
+import com.juancavr6.regibot.ml.Classification;
+import com.juancavr6.regibot.ml.Detections;
+import com.juancavr6.regibot.ml.LabelMap;
+import com.juancavr6.regibot.ml.RuntimeOptions;
+import com.juancavr6.regibot.ml.ThrowCache;
 import com.juancavr6.regibot.ui.UIActionElement;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class SettingsController {
 
     private static SettingsController instance;
     private final SettingsValuesProvider settingsValuesProvider;
 
-    private static final List<String> priorityObjectList = new ArrayList<>();
+    // Detector classes the tasks look for, as LabelMap ids
+    public static final int CLASS_POKEMON = LabelMap.intern("pokemon");
+    public static final int CLASS_POKESTOP = LabelMap.intern("pokestop");
+    public static final int CLASS_ROCKET_POKESTOP = LabelMap.intern("rocket_pokestop");
+    public static final int CLASS_BOUNDING_BOX = LabelMap.intern("boundingBox");
+    public static final int CLASS_DYNAMIC_BOX = LabelMap.intern("dynamicBox");
+    public static final int CLASS_POKEBALL = LabelMap.intern("pokeball");
+    public static final int CLASS_CLICKABLE = LabelMap.intern("clickable");
+    public static final int CLASS_PASSENGER = LabelMap.intern("passenger");
+
+    private static final List<Integer> priorityObjectList = new ArrayList<>();
+    private final TargetMatcher mapMatcher = new TargetMatcher(); // Ranks map targets by priorityObjectList
     private List<UIActionElement> UIPriorityList = new ArrayList<>();
 
     private boolean fastCatch;
@@ -21,6 +37,19 @@ public class SettingsController {
     private boolean throwBoost;
     private boolean saveCoords;
     private boolean debugOverlay;
+    private boolean warmUpModels;
+    private boolean pipelineDetection;
+    private String captureSource;
+    private int replayRate;
+    private Map<String, RuntimeOptions> runtimeOptions;
+    private int throwCacheGrid;
+    private int modelMemoryBudget;
+    private String traceLevel;
+    private boolean traceToFile;
+    private boolean recordTimeline;
+    private boolean triggerOnEvents;
+    private int maxCaptureInterval;
+    private ThrowCache.Snapshot throwCache;
 
     private int cycleInterval;
     private int waitTimeout ;
@@ -73,6 +102,19 @@ public class SettingsController {
         this.autoCorrectMenusScreen = settingsValuesProvider.shouldAutoCorrectMenusScreen();
         this.pokeballCoords= settingsValuesProvider.getPokeballCoords();
         this.debugOverlay = settingsValuesProvider.shouldDebugOverlay();
+        this.warmUpModels = settingsValuesProvider.shouldWarmUpModels();
+        this.pipelineDetection = settingsValuesProvider.shouldPipelineDetection();
+        this.captureSource = settingsValuesProvider.getCaptureSource();
+        this.replayRate = settingsValuesProvider.getReplayRate();
+        this.runtimeOptions = settingsValuesProvider.getRuntimeOptions();
+        this.throwCacheGrid = settingsValuesProvider.getThrowCacheGrid();
+        this.modelMemoryBudget = settingsValuesProvider.getModelMemoryBudget();
+        this.traceLevel = settingsValuesProvider.getTraceLevel();
+        this.traceToFile = settingsValuesProvider.shouldTraceToFile();
+        this.recordTimeline = settingsValuesProvider.shouldRecordTimeline();
+        this.triggerOnEvents = settingsValuesProvider.shouldTriggerOnEvents();
+        this.maxCaptureInterval = settingsValuesProvider.getMaxCaptureInterval();
+        this.throwCache = settingsValuesProvider.getThrowCache();
 
         // Initialize the priority list based on the settings
 
@@ -88,61 +130,56 @@ public class SettingsController {
             if (element.isEnabled()) {
                 switch (element.getId()) {
                     case "actionElement_pokemon":
-                        priorityObjectList.add("pokemon");
+                        priorityObjectList.add(CLASS_POKEMON);
                         break;
                     case "actionElement_pokestop":
-                        priorityObjectList.add("pokestop");
+                        priorityObjectList.add(CLASS_POKESTOP);
                         break;
                     case "actionElement_rocket":
-                        priorityObjectList.add("rocket_pokestop");
+                        priorityObjectList.add(CLASS_ROCKET_POKESTOP);
                         break;
                     default:
                         break;
                 }
             }
         }
-
-
+        mapMatcher.setPriorities(priorityObjectList);
     }
 
-    public int lookForMatchAtMap(ModelHandler.Detector detector){
-        for (String objectClass : priorityObjectList) {
-            System.out.println("Matching " + objectClass );
-            int foundIndex = detector.findClassIndex(objectClass,detectorThreshold);
-            System.out.println("Lookformatch: " + foundIndex );
-
-            if( foundIndex > -1 ) return foundIndex;
-
-            }
+    // Best map target by priority then score, -1 if none
+    public int lookForMatchAtMap(Detections detections){
+        return lookForTargetsAtMap(detections).first();
+    }
 
-        return -1;
+    // Every map target by priority then score, valid until the next call
+    public TargetMatcher lookForTargetsAtMap(Detections detections){
+        return mapMatcher.match(detections, detectorThreshold);
     }
 
-    public int lookForMatchAtEncounter(ModelHandler.Detector detector,String objectiveClass){
+    public int lookForMatchAtEncounter(Detections detections,int objectiveClass){
+        if(detections == null) return -1;
 
-        float encounterThreshold = objectiveClass.equals("pokeball") ? pokeballThreshold : boxThreshold;
-        System.out.println("Matching " + objectiveClass );
-        int foundIndex = detector.findClassIndex(objectiveClass,encounterThreshold);
-        System.out.println("Lookformatch: " + foundIndex );
+        float encounterThreshold = objectiveClass == CLASS_POKEBALL ? pokeballThreshold : boxThreshold;
 
-        return foundIndex;
+        return detections.findClassIndex(objectiveClass,encounterThreshold);
     }
 
-    public int lookForMatchAtClickable(ModelHandler.Detector detector,String objectiveClass){
+    public int lookForMatchAtClickable(Detections detections,int objectiveClass){
+        if(detections == null) return -1;
 
-        float encounterThreshold = objectiveClass.equals("clickable") ? clickableThreshold : passengerThreshold;
+        float encounterThreshold = objectiveClass == CLASS_CLICKABLE ? clickableThreshold : passengerThreshold;
 
-        return detector.findClassIndex(objectiveClass,encounterThreshold);
+        return detections.findClassIndex(objectiveClass,encounterThreshold);
     }
 
-    public boolean isValidClassification(ModelHandler.Classifier classifier) {
+    public boolean isValidClassification(Classification classification) {
 
-        if(autoCorrectRewardScreen && classifier.getClassName(0).equals("rewardScreen"))
-            return classifier.getScore(0) > 0.2f;
-        else if (autoCorrectMenusScreen && classifier.getClassName(0).equals("menusScreen"))
-            return classifier.getScore(0) > 0.3f;
+        if(autoCorrectRewardScreen && "rewardScreen".equals(classification.getClassName(0)))
+            return classification.getScore(0) > 0.2f;
+        else if (autoCorrectMenusScreen && "menusScreen".equals(classification.getClassName(0)))
+            return classification.getScore(0) > 0.3f;
 
-        return classifier.getScore(0) > classifierThreshold;
+        return classification.getScore(0) > classifierThreshold;
     }
 
     public float getThrowBoostDurationFactor() {
@@ -291,4 +328,138 @@ public class SettingsController {
         settingsValuesProvider.setDebugOverlay(debugOverlay);
     }
 
+    public boolean shouldWarmUpModels() {
+        return warmUpModels;
+    }
+
+    public void setWarmUpModels(boolean warmUpModels) {
+        this.warmUpModels = warmUpModels;
+        settingsValuesProvider.setWarmUpModels(warmUpModels);
+    }
+
+    public boolean shouldPipelineDetection() {
+        return pipelineDetection;
+    }
+
+    public void setPipelineDetection(boolean pipelineDetection) {
+        this.pipelineDetection = pipelineDetection;
+        settingsValuesProvider.setPipelineDetection(pipelineDetection);
+    }
+
+    public String getCaptureSource() {
+        return captureSource;
+    }
+
+    public boolean shouldUseProjection() {
+        return SettingsValuesProvider.CAPTURE_SOURCE_PROJECTION.equals(captureSource);
+    }
+
+    public boolean shouldUseReplay() {
+        return SettingsValuesProvider.CAPTURE_SOURCE_REPLAY.equals(captureSource);
+    }
+
+    public void setCaptureSource(String captureSource) {
+        this.captureSource = captureSource;
+        settingsValuesProvider.setCaptureSource(captureSource);
+    }
+
+    public int getReplayRate() {
+        return replayRate;
+    }
+
+    public void setReplayRate(int replayRate) {
+        this.replayRate = replayRate;
+        settingsValuesProvider.setReplayRate(replayRate);
+    }
+
+    public RuntimeOptions getRuntimeOptions(String modelName) {
+        RuntimeOptions options = runtimeOptions.get(modelName);
+        return options != null ? options : RuntimeOptions.DEFAULT;
+    }
+
+    // Takes effect the next time the models are loaded
+    public void setRuntimeOptions(String modelName, RuntimeOptions options) {
+        runtimeOptions.put(modelName, options);
+        settingsValuesProvider.setRuntimeOptions(runtimeOptions);
+    }
+
+    public void setRuntimeOptions(Map<String, RuntimeOptions> options) {
+        runtimeOptions.putAll(options);
+        settingsValuesProvider.setRuntimeOptions(runtimeOptions);
+    }
+
+    public int getThrowCacheGrid() {
+        return throwCacheGrid;
+    }
+
+    public void setThrowCacheGrid(int throwCacheGrid) {
+        this.throwCacheGrid = throwCacheGrid;
+        settingsValuesProvider.setThrowCacheGrid(throwCacheGrid);
+    }
+
+    public ThrowCache.Snapshot getThrowCache() {
+        return throwCache;
+    }
+
+    public void setThrowCache(ThrowCache.Snapshot throwCache) {
+        this.throwCache = throwCache;
+        settingsValuesProvider.setThrowCache(throwCache);
+    }
+
+    // MB, 0 for no limit
+    public int getModelMemoryBudget() {
+        return modelMemoryBudget;
+    }
+
+    public void setModelMemoryBudget(int modelMemoryBudget) {
+        this.modelMemoryBudget = modelMemoryBudget;
+        settingsValuesProvider.setModelMemoryBudget(modelMemoryBudget);
+    }
+
+    public String getTraceLevel() {
+        return traceLevel;
+    }
+
+    public void setTraceLevel(String traceLevel) {
+        this.traceLevel = traceLevel;
+        settingsValuesProvider.setTraceLevel(traceLevel);
+    }
+
+    public boolean shouldTraceToFile() {
+        return traceToFile;
+    }
+
+    public void setTraceToFile(boolean traceToFile) {
+        this.traceToFile = traceToFile;
+        settingsValuesProvider.setTraceToFile(traceToFile);
+    }
+
+    public boolean shouldRecordTimeline() {
+        return recordTimeline;
+    }
+
+    public void setRecordTimeline(boolean recordTimeline) {
+        this.recordTimeline = recordTimeline;
+        settingsValuesProvider.setRecordTimeline(recordTimeline);
+    }
+
+    public boolean shouldTriggerOnEvents() {
+        return triggerOnEvents;
+    }
+
+    public void setTriggerOnEvents(boolean triggerOnEvents) {
+        this.triggerOnEvents = triggerOnEvents;
+        settingsValuesProvider.setTriggerOnEvents(triggerOnEvents);
+    }
+
+    // ms
+    public int getMaxCaptureInterval() {
+        return maxCaptureInterval;
+    }
+
+    public void setMaxCaptureInterval(int maxCaptureInterval) {
+        this.maxCaptureInterval = maxCaptureInterval;
+        settingsValuesProvider.setMaxCaptureInterval(maxCaptureInterval);
+    }
+
 }
@@ -9,11 +9,15 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import com.juancavr6.regibot.R;
+import com.juancavr6.regibot.ml.RuntimeOptions;
+import com.juancavr6.regibot.ml.ThrowCache;
 import com.juancavr6.regibot.ui.UIActionElement;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SettingsValuesProvider {
 
@@ -28,6 +32,8 @@ public class SettingsValuesProvider {
     public static final boolean THROW_BOOST = true;  // Activate throw boost
     public static final boolean SAVE_COORDS = false;  // Activate throw boost
     public static final boolean DEBUG_OVERLAY = false; // Activate debug overlay
+    public static final boolean WARM_UP_MODELS = true; // Run each model once on a synthetic input after loading
+    public static final boolean PIPELINE_DETECTION = false; // Capture and detect the next frame while acting on this one
 
     public static final int CYCLE_INTERVAL = 600;// Pause time between cycles
     public static final int WAIT_TIMEOUT = 5000;// Max thread wait time
@@ -45,6 +51,19 @@ public class SettingsValuesProvider {
     public static final boolean AUTO_CORRECT_REWARDSCREEN = true;// Should correct the reward screen score validation
     public static final boolean AUTO_CORRECT_MENUSSCREEN = true;// Should correct the menus screen score validation
 
+    public static final String CAPTURE_SOURCE_SCREENSHOT = "screenshot"; // AccessibilityService screenshots
+    public static final String CAPTURE_SOURCE_PROJECTION = "projection"; // MediaProjection stream
+    public static final String CAPTURE_SOURCE_REPLAY = "replay"; // Recorded frames in the app files "replay" directory
+    public static final String CAPTURE_SOURCE = CAPTURE_SOURCE_SCREENSHOT; // Where frames come from
+    public static final int REPLAY_RATE = 3; // Frames per second played by the replay source
+    public static final int MODEL_MEMORY_BUDGET = 0; // MB of native memory for the models before detectors are closed, 0 for no limit
+    public static final int THROW_CACHE_GRID = 100; // Cells per axis the throw cache quantizes boxes to, 0 turns it off
+    public static final String TRACE_LEVEL = "off"; // Lowest level of the traced events, see Tracer.parseLevel
+    public static final boolean TRACE_TO_FILE = false; // Write traced events to the app files "trace" directory instead of logcat
+    public static final boolean RECORD_TIMELINE = false; // Export the loop cycles as a Chrome trace to the app files "trace" directory
+    public static final boolean TRIGGER_ON_EVENTS = false; // Capture on accessibility events of screen changes instead of every cycle interval
+    public static final int MAX_CAPTURE_INTERVAL = 5000; // Longest time without a capture in the event trigger mode
+
     public static final int CATEGORY_GENERAL = 0;
     public static final int CATEGORY_THRESHOLD = 1;
 
@@ -75,6 +94,8 @@ public class SettingsValuesProvider {
                 setWaitTimeout(WAIT_TIMEOUT);
                 setMaxResults(MAX_RESULTS);
                 setBoostValue(BOOST_VALUE);
+                setCaptureSource(CAPTURE_SOURCE);
+                setReplayRate(REPLAY_RATE);
                 break;
 
             case CATEGORY_THRESHOLD:
@@ -372,4 +393,197 @@ public class SettingsValuesProvider {
         editor.apply();
     }
 
+    public String getCaptureSource() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return sharedPreferences.getString(context.getString(R.string.preferences_key_capture_source), CAPTURE_SOURCE);
+    }
+
+    public void setCaptureSource(String captureSource) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(context.getString(R.string.preferences_key_capture_source), captureSource);
+        editor.apply();
+    }
+
+    public int getReplayRate() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return Integer.parseInt(sharedPreferences.getString(
+                context.getString(R.string.preferences_key_replay_rate), "" + REPLAY_RATE));
+    }
+
+    public void setReplayRate(int replayRate) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(context.getString(R.string.preferences_key_replay_rate), "" + replayRate);
+        editor.apply();
+    }
+
+    // Runtime options per model file name, models without an entry use RuntimeOptions.DEFAULT
+    public Map<String, RuntimeOptions> getRuntimeOptions() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        String json = sharedPreferences.getString(context.getString(R.string.preferences_key_runtime_options), "");
+        Type type = new TypeToken<Map<String, RuntimeOptions>>() {}.getType();
+        Map<String, RuntimeOptions> options = json.isEmpty() ? null : new Gson().fromJson(json, type);
+
+        return options != null ? options : new HashMap<>();
+    }
+
+    public void setRuntimeOptions(Map<String, RuntimeOptions> options) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(context.getString(R.string.preferences_key_runtime_options), new Gson().toJson(options));
+        editor.apply();
+    }
+
+    public boolean shouldWarmUpModels() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return sharedPreferences.getBoolean(context.getString(R.string.preferences_key_warm_up_models), WARM_UP_MODELS);
+    }
+
+    public void setWarmUpModels(boolean warmUpModels) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean(context.getString(R.string.preferences_key_warm_up_models), warmUpModels);
+        editor.apply();
+    }
+
+    public boolean shouldPipelineDetection() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return sharedPreferences.getBoolean(context.getString(R.string.preferences_key_pipeline_detection), PIPELINE_DETECTION);
+    }
+
+    public void setPipelineDetection(boolean pipelineDetection) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean(context.getString(R.string.preferences_key_pipeline_detection), pipelineDetection);
+        editor.apply();
+    }
+
+    public int getThrowCacheGrid() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return Integer.parseInt(sharedPreferences.getString(
+                context.getString(R.string.preferences_key_throw_cache_grid), "" + THROW_CACHE_GRID));
+    }
+
+    public void setThrowCacheGrid(int throwCacheGrid) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(context.getString(R.string.preferences_key_throw_cache_grid), "" + throwCacheGrid);
+        editor.apply();
+    }
+
+    // Throws cached in the last session, null if none
+    public ThrowCache.Snapshot getThrowCache() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        String json = sharedPreferences.getString(context.getString(R.string.preferences_key_throw_cache), "");
+        return json.isEmpty() ? null : new Gson().fromJson(json, ThrowCache.Snapshot.class);
+    }
+
+    public void setThrowCache(ThrowCache.Snapshot snapshot) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(context.getString(R.string.preferences_key_throw_cache), new Gson().toJson(snapshot));
+        editor.apply();
+    }
+
+    public int getModelMemoryBudget() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return Integer.parseInt(sharedPreferences.getString(
+                context.getString(R.string.preferences_key_model_memory_budget), "" + MODEL_MEMORY_BUDGET));
+    }
+
+    public void setModelMemoryBudget(int modelMemoryBudget) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(context.getString(R.string.preferences_key_model_memory_budget), "" + modelMemoryBudget);
+        editor.apply();
+    }
+
+    public String getTraceLevel() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return sharedPreferences.getString(context.getString(R.string.preferences_key_trace_level), TRACE_LEVEL);
+    }
+
+    public void setTraceLevel(String traceLevel) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(context.getString(R.string.preferences_key_trace_level), traceLevel);
+        editor.apply();
+    }
+
+    public boolean shouldTraceToFile() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return sharedPreferences.getBoolean(context.getString(R.string.preferences_key_trace_to_file), TRACE_TO_FILE);
+    }
+
+    public void setTraceToFile(boolean traceToFile) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean(context.getString(R.string.preferences_key_trace_to_file), traceToFile);
+        editor.apply();
+    }
+
+    public boolean shouldRecordTimeline() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return sharedPreferences.getBoolean(context.getString(R.string.preferences_key_record_timeline), RECORD_TIMELINE);
+    }
+
+    public void setRecordTimeline(boolean recordTimeline) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean(context.getString(R.string.preferences_key_record_timeline), recordTimeline);
+        editor.apply();
+    }
+
+    public boolean shouldTriggerOnEvents() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return sharedPreferences.getBoolean(context.getString(R.string.preferences_key_trigger_on_events), TRIGGER_ON_EVENTS);
+    }
+
+    public void setTriggerOnEvents(boolean triggerOnEvents) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putBoolean(context.getString(R.string.preferences_key_trigger_on_events), triggerOnEvents);
+        editor.apply();
+    }
+
+    public int getMaxCaptureInterval() {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        return Integer.parseInt(sharedPreferences.getString(
+                context.getString(R.string.preferences_key_max_capture_interval), "" + MAX_CAPTURE_INTERVAL));
+    }
+
+    public void setMaxCaptureInterval(int maxCaptureInterval) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putString(context.getString(R.string.preferences_key_max_capture_interval), "" + maxCaptureInterval);
+        editor.apply();
+    }
+
 }
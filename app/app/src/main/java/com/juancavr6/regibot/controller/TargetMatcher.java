@@ -0,0 +1,94 @@
+package com.juancavr6.regibot.controller;
+
+import com.juancavr6.regibot.ml.Detections;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ranks the detections the user wants acted on by the priority of their class.
+ * One pass over the detections fills a table with the best detection of every target class and
+ * buckets all the targets by priority; a query for the best target of a priority is then a lookup.
+ * Detections come sorted by score, so targets of the same priority stay sorted by score.
+ * Reused between matches, not thread safe.
+ */
+public class TargetMatcher {
+
+    private int[] rankByClass = new int[0]; // Class id -> priority, -1 if not a target
+    private int priorities;
+
+    // Result of the last match
+    private int[] bestByRank = new int[0];  // Best detection index of each priority, -1 if none
+    private int[] countByRank = new int[0];
+    private int[] ranked = new int[0];      // Detection indexes, by priority then score
+    private int size;
+
+    // Class ids in priority order, highest first
+    void setPriorities(List<Integer> classIds) {
+        int maxId = -1;
+        for (int i = 0; i < classIds.size(); i++) maxId = Math.max(maxId, classIds.get(i));
+        rankByClass = new int[maxId + 1];
+        Arrays.fill(rankByClass, -1);
+        for (int rank = 0; rank < classIds.size(); rank++) {
+            int classId = classIds.get(rank);
+            if (rankByClass[classId] < 0) rankByClass[classId] = rank;
+        }
+        priorities = classIds.size();
+        bestByRank = new int[priorities];
+        countByRank = new int[priorities + 1];
+        size = 0;
+    }
+
+    // Rank the detections scoring at least threshold whose class is a target
+    public TargetMatcher match(Detections detections, float threshold) {
+        Arrays.fill(bestByRank, -1);
+        Arrays.fill(countByRank, 0);
+        size = 0;
+        if (detections == null) return this;
+
+        int end = 0;
+        while (end < detections.size() && detections.getScore(end) >= threshold) {
+            int rank = rankOf(detections.getClassId(end));
+            if (rank >= 0) {
+                if (bestByRank[rank] < 0) bestByRank[rank] = end;
+                countByRank[rank + 1]++;
+                size++;
+            }
+            end++;
+        }
+        if (size == 0) return this;
+
+        // Counting sort by priority, stable so each priority keeps the score order
+        if (ranked.length < size) ranked = new int[Math.max(size, ranked.length * 2)];
+        for (int rank = 1; rank <= priorities; rank++) countByRank[rank] += countByRank[rank - 1];
+        for (int i = 0; i < end; i++) {
+            int rank = rankOf(detections.getClassId(i));
+            if (rank >= 0) ranked[countByRank[rank]++] = i;
+        }
+        return this;
+    }
+
+    private int rankOf(int classId) {
+        return classId >= 0 && classId < rankByClass.length ? rankByClass[classId] : -1;
+    }
+
+    // Number of targets found
+    public int size() {
+        return size;
+    }
+
+    // Detection index of the target at the given position of the ranking
+    public int get(int position) {
+        return ranked[position];
+    }
+
+    // Detection index of the best target, -1 if none
+    public int first() {
+        return size > 0 ? ranked[0] : -1;
+    }
+
+    // Detection index of the best target of the given priority (0 is the highest), -1 if none
+    public int bestOfPriority(int rank) {
+        return rank >= 0 && rank < priorities ? bestByRank[rank] : -1;
+    }
+}
@@ -1,41 +1,70 @@
 package com.juancavr6.regibot.executor;
 
 import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.AccessibilityServiceInfo;
 import android.accessibilityservice.GestureDescription;
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.graphics.Path;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.media.projection.MediaProjection;
+import android.text.TextUtils;
 import android.util.Log;
-import android.view.Display;
-
-import androidx.annotation.NonNull;
-
+import android.view.accessibility.AccessibilityEvent;
+import android.widget.Toast;
+
+import com.juancavr6.regibot.R;
+import com.juancavr6.regibot.capture.AccessibilityFrameSource;
+import com.juancavr6.regibot.capture.Frame;
+import com.juancavr6.regibot.capture.FramePool;
+import com.juancavr6.regibot.capture.FrameSource;
+import com.juancavr6.regibot.capture.HardwareFrameConverter;
+import com.juancavr6.regibot.capture.ProjectionFrameSource;
+import com.juancavr6.regibot.capture.ReplayFrameSource;
 import com.juancavr6.regibot.controller.SettingsController;
+import com.juancavr6.regibot.controller.TargetMatcher;
+import com.juancavr6.regibot.ml.AsyncDetector;
+import com.juancavr6.regibot.ml.Classification;
+import com.juancavr6.regibot.ml.Detections;
+import com.juancavr6.regibot.ml.LabelMap;
 import com.juancavr6.regibot.ml.ModelHandler;
+import com.juancavr6.regibot.ml.ModelLoader;
+import com.juancavr6.regibot.ml.ThrowCache;
 import com.juancavr6.regibot.services.ActionService;
 import com.juancavr6.regibot.services.FloatingMenuService;
+import com.juancavr6.regibot.services.ProjectionService;
+import com.juancavr6.regibot.trace.Latency;
+import com.juancavr6.regibot.trace.Timeline;
+import com.juancavr6.regibot.trace.TraceEvent;
+import com.juancavr6.regibot.trace.Tracer;
 import com.juancavr6.regibot.ui.DebugOverlayManager;
 import com.juancavr6.regibot.utils.CustomUtils;
 
-public class ActionLooper implements Runnable {
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ActionLooper implements LoopLifecycle.Worker {
 
     private final String TAG = "ActionLooper";
     //AccessibilityService reference
     private final  ActionService service;
     private final Intent intent;
 
-    //Running flags
-    private boolean isRunning;
-    private boolean isPaused;
+    //Loading, running, paused and stopping on a single worker thread
+    private final LoopLifecycle lifecycle = new LoopLifecycle(this, "ActionLooper");
 
-    //Models instances
-    private ModelHandler.Detector
-            model_map,
-            model_encounter,
-            model_clickable;
-    private ModelHandler.Classifier model_classifier;
-    private ModelHandler.Predictor model_predictor;
+    //Models, loaded on first use
+    private volatile ModelLoader models; // Read by onTrimMemory on the main thread
 
     //Settings Controller instance
     private final SettingsController controller ;
@@ -43,11 +72,52 @@ public class ActionLooper implements Runnable {
     //Debug Overlay Manager
     private DebugOverlayManager debugOverlayManager;
 
-    //Last screenshot made
-    public Bitmap lastScreenShot;
+    //Captured frames, model inputs are rendered once per frame into buffers reused between captures
+    private static final int FRAME_POOL_SIZE = 3; // Frame being filled + latest frame + frame in use
+    private static final long PROJECTION_START_TIMEOUT_MS = 5000; // For the service to take a projection just granted
+    private final HardwareFrameConverter frameConverter = new HardwareFrameConverter();
+    private final FramePool framePool = new FramePool(FRAME_POOL_SIZE, frameConverter);
+    private Frame latestFrame;  // Last screenshot made, guarded by lock
+    private Frame currentFrame; // Frame the loop is working on, only used by the loop thread
+
+    //Screenshots paced to the platform rate limit, a screen recording or a replay, chosen in settings
+    private FrameSource frameSource;
+    private boolean sourcePaused; // Paused with the loop, resumed by the next cycle
+
+    //Skips inference on frames that did not change
+    private final InferenceGate inferenceGate = new InferenceGate();
+
+    //Regions of interest of the screen tasks, detectors only see these crops
+    private Rect tapRegion;             // Map and reward targets, taps below it are rejected anyway
+    private Rect pokeballRegion;        // Bottom band where the Pokeball is
+    private Rect encounterTargetRegion; // Everything above the Pokeball band
+
+
+    //Pipelined mode: the next frame is captured while this one is handled
+    private final AtomicInteger actionCount = new AtomicInteger(); // Gestures and global actions dispatched so far
+    private boolean prefetched;        // latestFrame was prefetched, guarded by lock
+    private int prefetchActionCount;   // actionCount when the prefetched frame was requested
+    private long prefetchHits;
+    private long prefetchDiscards;
 
+    //Runs the detector of the likely next screen while the classifier runs
+    private final Speculator speculator = new Speculator();
 
-    //Thread locker
+    //Throws already predicted for similar boxes, built with the models
+    private ThrowCache throwCache;
+
+    //Timeline of the cycles written here when recording, null if not
+    private File timelineFile;
+
+    //Starts the cycles on screen changes in the event trigger mode
+    private final CaptureTrigger captureTrigger = new CaptureTrigger();
+
+    //Capture or gesture the loop is waiting for, cancelled on stop
+    private volatile CompletableFuture<Boolean> waiting;
+    private final long[] waits = new long[2];    // Per TraceEvent.WAIT_* kind
+    private final long[] timeouts = new long[2];
+
+    //Guards the frames handed over by captures
     private final Object lock = new Object();
 
 
@@ -60,75 +130,376 @@ public class ActionLooper implements Runnable {
 
     }
     @Override
-    public void run() {
-        if(model_map==null) loadModels();
+    public void load() {
+        loadModels();
         controller.reloadAllValues();
+        initTracer();
+        initTimeline();
+        Latency.reset();
+        Arrays.fill(waits, 0);
+        Arrays.fill(timeouts, 0);
+        captureTrigger.reset();
+        setEventTypes(controller.shouldTriggerOnEvents());
+        initRegions();
+        initFrameSource();
         initDebugOverlay();
         service.startService(intent);
+    }
 
-        isRunning = true;
-        isPaused = true;
-        while (isRunning){
-            if(!isPaused){
-                try {
-                    Thread.sleep(controller.getCycleInterval());
-
-                    captureScreen();
-                    synchronized(lock){lock.wait(controller.getWaitTimeout());} // Wait for screenshot
-
-                    if(lastScreenShot != null){
-
-                        model_classifier.classify(lastScreenShot);
-                        Log.d(TAG,"run(): Class  " + model_classifier.getClassName(0) + " " + model_classifier.getScore(0) );
-                        updateDebugClassifier();
-
-                        if(controller.isValidClassification(model_classifier)){
-                            switch (model_classifier.getClassName(0)){
-                                case "mapScreen":
-                                    taskMapScreen();
-                                    break;
-                                case "pokestopScreen":
-                                    taskPokestopScreen();
-                                    break;
-                                case "encounterScreen":
-                                    taskEncounterScreen();
-                                    break;
-                                case "rewardScreen":
-                                    taskRewardScreen();
-                                    break;
-                                case "eggScreen":
-                                    taskEggScreen();
-                                    break;
-                                case "menusScreen":
-                                    taskMenusScreen();
-                                    break;
-                                default:
-                                    service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
-                                    break;
-                            }
-
-                        }
+    @Override
+    public void runCycle() throws InterruptedException {
+        if(sourcePaused){
+            frameSource.resume();
+            sourcePaused = false;
+        }
+        checkFrameSource();
+        Timeline.beginCycle();
+        long sleepStart = Latency.start();
+        boolean screenChanged = false;
+        if(controller.shouldTriggerOnEvents()){
+            CaptureTrigger.Cause cause = captureTrigger.awaitNext(controller.getCycleInterval(), controller.getMaxCaptureInterval());
+            Latency.record(Latency.Stage.SLEEP, sleepStart);
+            Tracer.event(Log.VERBOSE, TraceEvent.CAPTURE_TRIGGERED, cause.ordinal());
+            if(cause == CaptureTrigger.Cause.WOKEN) return; // Pausing or stopping
+            screenChanged = cause != CaptureTrigger.Cause.MAX_INTERVAL;
+        }
+        else{
+            Thread.sleep(controller.getCycleInterval());
+            Latency.record(Latency.Stage.SLEEP, sleepStart);
+        }
+        models.trim(); // No model is in use between cycles
+
+        if(!takePrefetchedFrame(screenChanged)){
+            await(captureScreen(), TraceEvent.WAIT_CAPTURE);
+        }
+
+        ModelHandler.Classifier model_classifier = models.getClassifier();
+        boolean acquired = acquireLatestFrame();
+        if(acquired){
+            startPipelinedWork();
+            speculator.start(currentFrame, this::speculationTarget);
+        }
+        Classification classification = acquired ? inferenceGate.classify(model_classifier, currentFrame) : null;
+        if(classification != null){
+            if(Tracer.isEnabled(Log.DEBUG))
+                Tracer.event(Log.DEBUG, TraceEvent.CLASSIFIED, classification.getFrameId(),
+                        classification.getClassId(0), Tracer.bits(classification.getScore(0)));
+            updateDebugClassifier(classification);
+
+            String screen = screenOf(controller, classification);
+            speculator.finish(screen);
+            if(screen != null){
+                switch (screen){
+                    case "mapScreen":
+                        taskMapScreen();
+                        break;
+                    case "pokestopScreen":
+                        taskPokestopScreen();
+                        break;
+                    case "encounterScreen":
+                        taskEncounterScreen();
+                        break;
+                    case "rewardScreen":
+                        taskRewardScreen();
+                        break;
+                    case "eggScreen":
+                        taskEggScreen();
+                        break;
+                    case "menusScreen":
+                        taskMenusScreen();
+                        break;
+                    default:
+                        performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+                        break;
+                }
+
+            }
+        }
+        else if(acquired) speculator.finish(null);
+    }
+
+    @Override
+    public void onPaused() {
+        frameSource.pause();
+        sourcePaused = true;
+        logReports();
+        exportTimeline();
+    }
+
+    @Override
+    public void release() {
+        setEventTypes(false);
+        releaseFrames();
+        // Free the models for the game while stopped, the next start loads them again
+        if (models != null) models.close();
+        models = null;
+        Tracer.stop();
+        Timeline.stop();
+        exportTimeline();
+    }
+
+    // Take the newest captured frame for the loop, false if nothing was captured yet
+    private boolean acquireLatestFrame() {
+        synchronized (lock) {
+            if (latestFrame == null) return false;
+            if (currentFrame != latestFrame) {
+                if (currentFrame != null) currentFrame.release();
+                currentFrame = latestFrame.retain();
+            }
+        }
+        inferenceGate.onFrame(currentFrame);
+        return true;
+    }
+
+    // Called from the capture callback, the pool reference of the frame moves to latestFrame
+    private void publishFrame(Frame frame) {
+        synchronized (lock) {
+            if (latestFrame != null) latestFrame.release();
+            latestFrame = frame;
+        }
+    }
+
+    // Pipelined mode: request the next frame and start the map detector on this one, then classify
+    private void startPipelinedWork() {
+        AsyncDetector asyncMap = models.getAsyncMapDetector();
+        if (asyncMap == null) return;
+        prefetchFrame();
+        if (inferenceGate.needsDetection(models.getMapDetector(), tapRegion)) asyncMap.submit(currentFrame, tapRegion);
+    }
+
+    // Detector a screen task starts with, null for screens that start without one
+    private Speculator.Target speculationTarget(String screen) {
+        switch (screen) {
+            case "mapScreen":
+                // Already running ahead in pipelined mode
+                return models.getAsyncMapDetector() != null ? null
+                        : new Speculator.Target(models::getMapDetector, tapRegion);
+            case "rewardScreen":
+                return new Speculator.Target(models::getClickableDetector, tapRegion);
+            case "menusScreen":
+                return new Speculator.Target(models::getClickableDetector, null);
+            case "encounterScreen":
+                // Same condition as resolvePokeballCoords
+                if (controller.shouldFixedPokeball()
+                        || (controller.shouldSaveCoords() && controller.isPokeballCoordsSet())) return null;
+                return new Speculator.Target(models::getEncounterDetector, pokeballRegion);
+            default:
+                return null;
+        }
+    }
+
+    // Capture without waking the loop, the frame is dropped if an action is dispatched before it arrives
+    private void prefetchFrame() {
+        final int requestActionCount = actionCount.get();
+        frameSource.requestFrame(new FrameSource.Callback() {
+            @Override
+            public void onFrame(Frame frame) {
+                synchronized (lock) {
+                    if (requestActionCount != actionCount.get()) {
+                        frame.release();
+                        prefetchDiscards++;
+                        return;
                     }
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    if (latestFrame != null) latestFrame.release();
+                    latestFrame = frame;
+                    prefetched = true;
+                    prefetchActionCount = requestActionCount;
                 }
             }
+
+            @Override
+            public void onFailure(int errorCode) {
+                Tracer.event(Log.WARN, TraceEvent.PREFETCH_FAILED, errorCode);
+            }
+        }, 0);
+    }
+
+    // True if a prefetched frame still shows the screen as it is, no action or screen change since it was requested
+    private boolean takePrefetchedFrame(boolean screenChanged) {
+        synchronized (lock) {
+            if (!prefetched) return false;
+            prefetched = false;
+            if (screenChanged || prefetchActionCount != actionCount.get()) {
+                prefetchDiscards++;
+                return false;
+            }
+            prefetchHits++;
+            return true;
+        }
+    }
+
+    /**
+     * Completes with true when the gesture completed, false if it was cancelled or could not be dispatched.
+     * The gesture is timed from dispatch to its result; dependent actions run on the main thread.
+     */
+    private CompletableFuture<Boolean> dispatchGesture(GestureDescription gesture) {
+        actionCount.incrementAndGet();
+        final long dispatched = Latency.start();
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        boolean accepted = service.dispatchGesture(gesture, new AccessibilityService.GestureResultCallback() {
+            @Override
+            public void onCompleted(GestureDescription gestureDescription) {
+                Latency.record(Latency.Stage.GESTURE, dispatched);
+                long start = Latency.start();
+                result.complete(true);
+                Timeline.span("gesture_completed", start);
+            }
+
+            @Override
+            public void onCancelled(GestureDescription gestureDescription) {
+                Latency.record(Latency.Stage.GESTURE, dispatched);
+                long start = Latency.start();
+                result.complete(false);
+                Timeline.span("gesture_cancelled", start);
+            }
+        }, null);
+        if (!accepted) result.complete(false);
+        return result;
+    }
+
+    /**
+     * Wait for a capture or gesture of this cycle, false if it failed, took longer than the wait timeout
+     * or the loop is stopping. Timeouts are counted per kind.
+     */
+    private boolean await(CompletableFuture<Boolean> completion, int kind) throws InterruptedException {
+        waiting = completion;
+        try {
+            waits[kind]++;
+            if (lifecycle.getState() == LoopLifecycle.State.STOPPING) return false;
+            return completion.get(controller.getWaitTimeout(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts[kind]++;
+            Tracer.event(Log.WARN, TraceEvent.WAIT_TIMEOUT, kind, controller.getWaitTimeout());
+            return false;
+        } catch (ExecutionException | CancellationException e) {
+            return false;
+        } finally {
+            waiting = null;
         }
+    }
+
+    private String waitReport() {
+        return "Waits capture=" + waits[TraceEvent.WAIT_CAPTURE] + " timeouts=" + timeouts[TraceEvent.WAIT_CAPTURE]
+                + ", gesture=" + waits[TraceEvent.WAIT_GESTURE] + " timeouts=" + timeouts[TraceEvent.WAIT_GESTURE];
+    }
+
+    private void performGlobalAction(int action) {
+        actionCount.incrementAndGet();
+        service.performGlobalAction(action);
+    }
+
+    @Override
+    public void onFailure(RuntimeException e) {
+        Log.e(TAG, "Action loop failed, stopping", e);
+    }
 
+    // Also after a load() that failed before the frame source or the models were made
+    private void releaseFrames() {
+        if (frameSource != null) frameSource.stop(); // First, so no capture publishes a frame after the pool is drained
+        sourcePaused = false;
+        synchronized (lock) {
+            if (currentFrame != null) currentFrame.release();
+            if (latestFrame != null) latestFrame.release();
+            currentFrame = null;
+            latestFrame = null;
+        }
+        logReports();
+        speculator.reset();
+        frameSource = null;
+        inferenceGate.reset();
+        framePool.clear();
+        frameConverter.close();
     }
 
 
     public void loadModels(){
-        model_map = ModelHandler.buildDetector
-           (service, "model_detector_map_v2.tflite",controller.getMaxResults());
-        model_encounter = ModelHandler.buildDetector
-           (service, "model_detector_encounter.tflite",controller.getMaxResults());
-        model_clickable = ModelHandler.buildDetector
-           (service, "model_detector_clickable_v2.tflite",controller.getMaxResults());
-        model_classifier = ModelHandler.buildClassifier
-           (service, "model_classifier_screen_v5.tflite",controller.getMaxResults());
-        model_predictor = ModelHandler.buildPredictor
-                (service,"predictor.tflite");
+        models = new ModelLoader(service, controller);
+        models.load();
+        throwCache = new ThrowCache(controller.getThrowCacheGrid());
+        throwCache.restore(controller.getThrowCache());
+    }
+
+    private void initRegions() {
+        tapRegion = CustomUtils.getTapSection(service.displayWidth, service.displayHeight);
+        pokeballRegion = CustomUtils.getPokeballSection(service.displayWidth, service.displayHeight);
+        encounterTargetRegion = CustomUtils.getEncounterTargetSection(service.displayWidth, service.displayHeight);
+    }
+
+    private void initTracer() {
+        File file = null;
+        if (controller.shouldTraceToFile()) {
+            File directory = service.getExternalFilesDir("trace");
+            if (directory != null) file = new File(directory, "trace-" + System.currentTimeMillis() + ".log");
+        }
+        Tracer.start(Tracer.parseLevel(controller.getTraceLevel()), file);
+    }
+
+    private void initTimeline() {
+        timelineFile = null;
+        if (!controller.shouldRecordTimeline()) return;
+        File directory = service.getExternalFilesDir("trace");
+        if (directory == null) return;
+        timelineFile = new File(directory, "timeline-" + System.currentTimeMillis() + ".json");
+        Timeline.start(Timeline.DEFAULT_CAPACITY);
+    }
+
+    // Write the cycles recorded so far, each pause rewrites the file of the session
+    private void exportTimeline() {
+        if (timelineFile == null) return;
+        try (Writer writer = new BufferedWriter(new FileWriter(timelineFile))) {
+            Timeline.export(writer);
+            Log.d(TAG, "exportTimeline(): " + Timeline.getCount() + " spans to " + timelineFile);
+        } catch (IOException e) {
+            Log.e(TAG, "exportTimeline(): " + e.getMessage());
+        }
+    }
+
+    private void initFrameSource() {
+        if (frameSource != null) return;
+        if (controller.shouldUseReplay()) {
+            // Recorded frames pushed to the app files, for measuring the loop without the game
+            frameSource = new ReplayFrameSource(service.getExternalFilesDir("replay"),
+                    controller.getReplayRate(), true, framePool);
+        } else if (controller.shouldUseProjection()) {
+            awaitProjectionService();
+            ProjectionService projectionService = ProjectionService.getInstance();
+            MediaProjection projection = projectionService != null ? projectionService.takeMediaProjection() : null;
+            if (projection != null) {
+                frameSource = new ProjectionFrameSource(projection, projectionService.getWidth(),
+                        projectionService.getHeight(), projectionService.getDensityDpi(), framePool);
+            } else {
+                // Already used by a previous start, or never granted
+                Log.w(TAG, "initFrameSource(): no screen recording granted, using screenshots");
+                showToast(R.string.displayText_projection_unavailable);
+            }
+        }
+        if (frameSource == null)
+            frameSource = new AccessibilityFrameSource(service, service.mainExecutor, service.mainHandler, framePool);
+        frameSource.start();
+    }
+
+    // The bot starts right after the recording consent, before the service has taken the projection
+    private void awaitProjectionService() {
+        try {
+            if (!ProjectionService.awaitStarted(PROJECTION_START_TIMEOUT_MS))
+                Log.w(TAG, "awaitProjectionService(): service not started after " + PROJECTION_START_TIMEOUT_MS + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Stopping, the loop checks it
+        }
+    }
+
+    // A screen recording stopped by the user or the system is replaced by screenshots, telling the user
+    private void checkFrameSource() {
+        if (!(frameSource instanceof ProjectionFrameSource) || ((ProjectionFrameSource) frameSource).isRunning())
+            return;
+        Log.w(TAG, "checkFrameSource(): screen recording stopped, using screenshots");
+        showToast(R.string.displayText_projection_stopped);
+        frameSource = new AccessibilityFrameSource(service, service.mainExecutor, service.mainHandler, framePool);
+        frameSource.start();
+    }
+
+    private void showToast(int message) {
+        service.mainHandler.post(() -> Toast.makeText(service, service.getString(message), Toast.LENGTH_LONG).show());
     }
 
     private void initDebugOverlay() {
@@ -139,28 +510,28 @@ public class ActionLooper implements Runnable {
         }
     }
 
-    private void updateDebugClassifier() {
+    private void updateDebugClassifier(Classification classification) {
         if (debugOverlayManager != null && debugOverlayManager.isEnabled()) {
             debugOverlayManager.clearAll();
-            debugOverlayManager.updateClassifier(model_classifier);
+            debugOverlayManager.updateClassifier(classification);
         }
     }
 
-    private void updateDebugMapDetector() {
+    private void updateDebugMapDetector(Detections map) {
         if (debugOverlayManager != null && debugOverlayManager.isEnabled()) {
-            debugOverlayManager.updateMapDetector(model_map);
+            debugOverlayManager.updateMapDetector(map);
         }
     }
 
-    private void updateDebugEncounterDetector() {
+    private void updateDebugEncounterDetector(Detections encounter) {
         if (debugOverlayManager != null && debugOverlayManager.isEnabled()) {
-            debugOverlayManager.updateEncounterDetector(model_encounter);
+            debugOverlayManager.updateEncounterDetector(encounter);
         }
     }
 
-    private void updateDebugClickableDetector() {
+    private void updateDebugClickableDetector(Detections clickable) {
         if (debugOverlayManager != null && debugOverlayManager.isEnabled()) {
-            debugOverlayManager.updateClickableDetector(model_clickable);
+            debugOverlayManager.updateClickableDetector(clickable);
         }
     }
 
@@ -173,156 +544,224 @@ public class ActionLooper implements Runnable {
     public DebugOverlayManager getDebugOverlayManager() {
         return debugOverlayManager;
     }
-    public void pause(){ this.isPaused=true; }
-    public void resume(){ this.isPaused=false; }
-    public void stop(){ this.isRunning=false; }
+    public void start(){ lifecycle.start(); }
+    public void pause(){
+        lifecycle.pause();
+        captureTrigger.wake(); // Do not wait for the next screen change to pause
+    }
+
+    // Keep the cached throws for the next session
+    private void saveThrowCache() {
+        if (throwCache == null) return;
+        Log.d(TAG, throwCache.report());
+        controller.setThrowCache(throwCache.snapshot());
+    }
+
+    // Stats of the session so far, on pause and stop, and the throws cached for the next session
+    private void logReports() {
+        Log.d(TAG, framePool.report());
+        Log.d(TAG, inferenceGate.report());
+        if (frameSource != null) Log.d(TAG, frameSource.report());
+        if (models != null) Log.d(TAG, models.report());
+        logPipelineReport();
+        Log.d(TAG, speculator.report());
+        Log.d(TAG, Latency.report());
+        Log.d(TAG, waitReport());
+        if(controller.shouldTriggerOnEvents()) Log.d(TAG, captureTrigger.report());
+        saveThrowCache();
+    }
+
+    private void logPipelineReport() {
+        AsyncDetector asyncMap = models != null ? models.getAsyncMapDetector() : null;
+        if (asyncMap == null) return;
+        Log.d(TAG, asyncMap.report());
+        synchronized (lock) {
+            Log.d(TAG, "Prefetch hits=" + prefetchHits + " discarded=" + prefetchDiscards);
+        }
+    }
+    public void onTrimMemory(int level) {
+        ModelLoader models = this.models;
+        if (models != null) models.onTrimMemory(level);
+    }
+    // Events are only sent to the service while the event trigger mode runs, none otherwise
+    private void setEventTypes(boolean enabled) {
+        AccessibilityServiceInfo info = service.getServiceInfo();
+        if (info == null) return;
+        info.eventTypes = enabled ? AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED : 0;
+        info.notificationTimeout = enabled ? 100 : 0;
+        service.setServiceInfo(info);
+    }
+    // Screen changes for the event trigger mode, events of the app itself (the debug overlay) are left out
+    public void onAccessibilityEvent(AccessibilityEvent event) {
+        if (TextUtils.equals(event.getPackageName(), service.getPackageName())) return;
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
+                captureTrigger.onEvent(CaptureTrigger.Cause.WINDOW_STATE);
+                break;
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+                captureTrigger.onEvent(CaptureTrigger.Cause.CONTENT_CHANGED);
+                break;
+        }
+    }
+    public void resume(){
+        captureTrigger.clearWake(); // Left set if pause() came while no cycle was waiting
+        lifecycle.resume();
+    }
+    public void stop(){
+        lifecycle.stop();
+        captureTrigger.wake();
+        // Do not wait out the timeout of the capture or gesture the cycle is waiting for
+        CompletableFuture<Boolean> waiting = this.waiting;
+        if(waiting != null) waiting.cancel(false);
+    }
+    public LoopLifecycle.State getState(){ return lifecycle.getState(); }
 
     private void taskMapScreen() throws InterruptedException{
-        model_map.detect(lastScreenShot);
-        Log.d(TAG , "run(): Scanning the map : " + model_map.getDetectionList().toString());
-        updateDebugMapDetector();
-        int objectMatchIndex = controller.lookForMatchAtMap(model_map);
-        if(objectMatchIndex > -1){
-            Log.d(TAG,"run(): Proceeding with: " + model_map.getClassName(objectMatchIndex));
-            performActionTap(model_map.getBoundingBox(objectMatchIndex));
-            synchronized(lock){lock.wait(controller.getWaitTimeout());}
+        ModelHandler.Detector model_map = models.getMapDetector();
+        AsyncDetector asyncMap = models.getAsyncMapDetector();
+        // Pipelined mode started the detection before classifying, use it unless it was dropped
+        Detections map = asyncMap != null ? asyncMap.await(model_map, currentFrame, tapRegion, controller.getWaitTimeout()) : null;
+        if(map == null) map = inferenceGate.detect(model_map, currentFrame, tapRegion);
+        Tracer.event(Log.DEBUG, TraceEvent.MAP_SCANNED, map.getFrameId(), map.size(),
+                map.isEmpty() ? LabelMap.NONE : map.getClassId(0), Tracer.bits(map.isEmpty() ? 0 : map.getScore(0)));
+        updateDebugMapDetector(map);
+        TargetMatcher targets = controller.lookForTargetsAtMap(map);
+        int rank = tappableTarget(targets, map, service.displayWidth, service.displayHeight);
+        if(rank < 0) return;
+        Tracer.event(Log.DEBUG, TraceEvent.TARGET_CHOSEN, map.getClassId(targets.get(rank)), rank + 1, targets.size());
+        await(performActionTap(map.getBoundingBox(targets.get(rank))), TraceEvent.WAIT_GESTURE);
+    }
+
+    // Screen the loop acts on, null if the classification is rejected. Also run by ReplayDecisionTest
+    static String screenOf(SettingsController controller, Classification classification) {
+        return controller.isValidClassification(classification) ? classification.getClassName(0) : null;
+    }
+
+    // Rank of the best target that can be tapped, a rejected tap falls through to the next one. -1 if none
+    static int tappableTarget(TargetMatcher targets, Detections map, int displayWidth, int displayHeight) {
+        for(int i = 0; i < targets.size(); i++){
+            RectF box = map.getBoundingBox(targets.get(i));
+            if(CustomUtils.isValidSectionForTap(box.centerX(), box.centerY(), displayWidth, displayHeight)) return i;
         }
+        return -1;
     }
     private void taskPokestopScreen() throws InterruptedException{
-        performActionSpinDisc();
-        synchronized(lock){lock.wait(controller.getWaitTimeout());}
+        await(performActionSpinDisc(), TraceEvent.WAIT_GESTURE);
     }
     private void taskEncounterScreen() throws InterruptedException{
         final float[] pokeballCoords = resolvePokeballCoords();
 
         if(pokeballCoords[1] != 0.0f){
             // Hold the Pokeball and look for the bounding box
-            service.mainHandler.post(new Runnable() {
+            service.mainHandler.post(Timeline.wrap("hold", new Runnable() {
                 @Override
                 public void run() {
                     performActionHold(pokeballCoords);
                 }
-            });
-            service.mainHandler.postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    captureScreen();
-                }},50);
-            synchronized(lock){lock.wait(controller.getWaitTimeout());}
+            }));
+            if(!await(captureScreen(50), TraceEvent.WAIT_CAPTURE)) return;
+            acquireLatestFrame();
 
-            model_encounter.detect(lastScreenShot);
-            Log.d(TAG,"run(): Finding BoundingBox " + model_encounter.getDetectionList());
-            updateDebugEncounterDetector();
+            ModelHandler.Detector model_encounter = models.getEncounterDetector();
+            Detections encounter = inferenceGate.detect(model_encounter, currentFrame, encounterTargetRegion);
+            updateDebugEncounterDetector(encounter);
 
-            int boundingBoxIndex = controller.lookForMatchAtEncounter(model_encounter,"boundingBox");
-            int dynamicBoxIndex = controller.lookForMatchAtEncounter(model_encounter,"dynamicBox");
+            int boundingBoxIndex = controller.lookForMatchAtEncounter(encounter,SettingsController.CLASS_BOUNDING_BOX);
+            int dynamicBoxIndex = controller.lookForMatchAtEncounter(encounter,SettingsController.CLASS_DYNAMIC_BOX);
+            Tracer.event(Log.DEBUG, TraceEvent.ENCOUNTER_SCANNED, encounter.getFrameId(), encounter.size(),
+                    boundingBoxIndex, dynamicBoxIndex);
 
             // If both bounding box and dynamic box are found, proceed with the throw
             if(boundingBoxIndex > -1 && dynamicBoxIndex > -1){
 
-                manageThrow(boundingBoxIndex,pokeballCoords);
+                manageThrow(encounter.getBoundingBox(boundingBoxIndex),pokeballCoords);
 
             }
         }
     }
     private void taskRewardScreen() throws InterruptedException{
-        model_clickable.detect(lastScreenShot);
-        updateDebugClickableDetector();
-        int clickableIndex = controller.lookForMatchAtClickable(model_clickable,"clickable");
-        Log.d(TAG,clickableIndex + " Finding Clickable:" + model_clickable.getDetectionList());
+        ModelHandler.Detector model_clickable = models.getClickableDetector();
+        Detections clickable = inferenceGate.detect(model_clickable, currentFrame, tapRegion);
+        updateDebugClickableDetector(clickable);
+        int clickableIndex = controller.lookForMatchAtClickable(clickable,SettingsController.CLASS_CLICKABLE);
+        Tracer.event(Log.DEBUG, TraceEvent.CLICKABLE_SCANNED, clickable.getFrameId(), clickable.size(), clickableIndex, -1);
         if (clickableIndex > -1){
-            Log.d(TAG,"run(): Clickable Found! ");
-            performActionTap(model_clickable.getBoundingBox(clickableIndex));
-            synchronized(lock){lock.wait(controller.getWaitTimeout());}
+            await(performActionTap(clickable.getBoundingBox(clickableIndex)), TraceEvent.WAIT_GESTURE);
         }
     }
     private void taskEggScreen() {
-        service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+        performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
         RectF centerBoxDisplay = new RectF(0,0,service.displayWidth,service.displayHeight);
         performActionTap(centerBoxDisplay);
     }
     private void taskMenusScreen() throws InterruptedException {
-        model_clickable.detect(lastScreenShot);
-        updateDebugClickableDetector();
-        int passengerIndex = controller.lookForMatchAtClickable(model_clickable,"passenger");
-        Log.d(TAG,passengerIndex + " Discarding Passenger Screen:" + model_clickable.getDetectionList());
+        ModelHandler.Detector model_clickable = models.getClickableDetector();
+        Detections clickable = inferenceGate.detect(model_clickable, currentFrame, null);
+        updateDebugClickableDetector(clickable);
+        int passengerIndex = controller.lookForMatchAtClickable(clickable,SettingsController.CLASS_PASSENGER);
         if (passengerIndex > -1){
-            Log.d(TAG,"run(): */* You're going too fast! ");
-            int clickableIndex = controller.lookForMatchAtClickable(model_clickable,"clickable");
-            Log.d(TAG,clickableIndex + " Finding Clickable:" + model_clickable.getDetectionList());
+            // You're going too fast!
+            int clickableIndex = controller.lookForMatchAtClickable(clickable,SettingsController.CLASS_CLICKABLE);
+            Tracer.event(Log.DEBUG, TraceEvent.CLICKABLE_SCANNED, clickable.getFrameId(), clickable.size(),
+                    clickableIndex, passengerIndex);
             if (clickableIndex > -1){
-                Log.d(TAG,"run(): Clickable Found! ");
-                performActionTap(model_clickable.getBoundingBox(clickableIndex));
-                synchronized(lock){lock.wait(controller.getWaitTimeout());}
+                await(performActionTap(clickable.getBoundingBox(clickableIndex)), TraceEvent.WAIT_GESTURE);
             }
-        }else service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+        }else{
+            Tracer.event(Log.DEBUG, TraceEvent.CLICKABLE_SCANNED, clickable.getFrameId(), clickable.size(), -1, -1);
+            performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+        }
     }
 
-    private void captureScreen (){
-        service.takeScreenshot(Display.DEFAULT_DISPLAY, service.mainExecutor, new AccessibilityService.TakeScreenshotCallback() {
+    private CompletableFuture<Boolean> captureScreen (){
+        return captureScreen(0);
+    }
+    // Completes with true once the frame is published as latestFrame, false if the capture failed
+    private CompletableFuture<Boolean> captureScreen (long delayMs){
+        final long requested = Latency.start();
+        final CompletableFuture<Boolean> captured = new CompletableFuture<>();
+        frameSource.requestFrame(new FrameSource.Callback() {
             @Override
-            public void onSuccess(@NonNull AccessibilityService.ScreenshotResult screenshotResult) {
-
-                try {
-                    Log.w(TAG, "Screen Capture Completed");
-                    Bitmap screenShot = Bitmap.wrapHardwareBuffer
-                            (screenshotResult.getHardwareBuffer(), screenshotResult.getColorSpace());
-                    screenShot = screenShot.copy(Bitmap.Config.ARGB_8888, true);
-
-                    lastScreenShot = screenShot;
-                    screenshotResult.getHardwareBuffer().close();
-                    synchronized (lock) {
-                        lock.notify();
-                    }
-                } catch (IllegalArgumentException e) {
-                    Log.e(TAG, "Capture conversion Failed");                }
+            public void onFrame(Frame frame) {
+
+                Latency.record(Latency.Stage.CAPTURE, requested);
+                Tracer.event(Log.VERBOSE, TraceEvent.CAPTURE_DONE, frame.getFrameId());
+                // The reference handed over moves to latestFrame, models render it on demand
+                publishFrame(frame);
+                captured.complete(true);
 
             }
 
             @Override
-            public void onFailure(int i) {
-                Log.e(TAG, "Capture Failed");
-                synchronized (lock) {
-                    lock.notify();
-                }
+            public void onFailure(int errorCode) {
+                Tracer.event(Log.WARN, TraceEvent.CAPTURE_FAILED, errorCode);
+                captured.complete(false);
             }
-        });
+        }, delayMs);
+        return captured;
 
     }
-    private void performActionTap(RectF boundingBox) {
+    private CompletableFuture<Boolean> performActionTap(RectF boundingBox) {
 
         int x = Math.round(boundingBox.centerX());
         int y = Math.round(boundingBox.centerY());
 
         if(!CustomUtils.isValidSectionForTap(x,y, service.displayWidth, service.displayHeight))
-            return;
+            return CompletableFuture.completedFuture(false);
 
         Path swipePath = new Path();
         swipePath.moveTo(x, y);
         swipePath.lineTo(x, y);
 
-        Log.v(TAG,"Tapping -->" + x + " , " + y);
+        Tracer.event(Log.VERBOSE, TraceEvent.TAP, x, y);
 
         GestureDescription.Builder gestureBuilder = new GestureDescription.Builder();
         gestureBuilder.addStroke(new GestureDescription.StrokeDescription(swipePath, 0, 10));
-        service.dispatchGesture(gestureBuilder.build(), new AccessibilityService.GestureResultCallback() {
-            @Override
-            public void onCompleted(GestureDescription gestureDescription) {
-                super.onCompleted(gestureDescription);
-                synchronized(lock){lock.notify();}
-
-            }
-
-            @Override
-            public void onCancelled(GestureDescription gestureDescription) {
-                super.onCancelled(gestureDescription);
-                synchronized(lock){lock.notify();}
-
-            }
-        }, null);
+        return dispatchGesture(gestureBuilder.build());
 
     }
-    private void performActionSpinDisc() {
+    // Completes once the disc was spun and the Pokestop closed
+    private CompletableFuture<Boolean> performActionSpinDisc() {
 
         int x = Math.round((float)service.displayWidth/2);
         int y = Math.round((float)service.displayHeight/2);
@@ -334,28 +773,21 @@ public class ActionLooper implements Runnable {
         GestureDescription.Builder gestureBuilder = new GestureDescription.Builder();
         gestureBuilder.addStroke(new GestureDescription.StrokeDescription(swipePath, 0, 300));
 
-        service.dispatchGesture(gestureBuilder.build(), new AccessibilityService.GestureResultCallback() {
-            @Override
-            public void onCompleted(GestureDescription gestureDescription) {
-                super.onCompleted(gestureDescription);
-                try {
-                    Thread.sleep(1000);
-                }catch (InterruptedException e){Thread.currentThread().interrupt();}
-
-                service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
-
-                synchronized(lock){lock.notify();}
-
-
-            }
-
-            @Override
-            public void onCancelled(GestureDescription gestureDescription) {
-                super.onCancelled(gestureDescription);
-                synchronized(lock){lock.notify();}
-
+        final CompletableFuture<Boolean> closed = new CompletableFuture<>();
+        dispatchGesture(gestureBuilder.build()).thenAccept(completed -> {
+            if(!completed){
+                closed.complete(false);
+                return;
             }
-        }, null);
+            // Give the items time to drop, without holding the main thread
+            service.mainHandler.postDelayed(Timeline.wrap("back", new Runnable() {
+                @Override
+                public void run() {
+                    performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+                    closed.complete(true);
+                }}),1000);
+        });
+        return closed;
     }
     private void performActionHold(float[] coords) {
 
@@ -367,26 +799,13 @@ public class ActionLooper implements Runnable {
         GestureDescription.Builder gestureBuilder = new GestureDescription.Builder();
         gestureBuilder.addStroke(new GestureDescription.StrokeDescription(swipePath, 0, 4000));
 
-        service.dispatchGesture(gestureBuilder.build(), new AccessibilityService.GestureResultCallback() {
-            @Override
-            public void onCompleted(GestureDescription gestureDescription) {
-                super.onCompleted(gestureDescription);
-                //synchronized(lock){lock.notify();}
-
-            }
-
-            @Override
-            public void onCancelled(GestureDescription gestureDescription) {
-                super.onCancelled(gestureDescription);
-                Log.e(TAG,"Gesture Hold Cancelled " + gestureDescription.toString());
-                //synchronized(lock){lock.notify();}
-
-            }
-        }, null);
-
+        // Not waited for: the box is looked for while holding, and the throw cancels the hold
+        dispatchGesture(gestureBuilder.build()).thenAccept(completed -> {
+            if(!completed) Tracer.event(Log.WARN, TraceEvent.GESTURE_CANCELLED, TraceEvent.GESTURE_HOLD);
+        });
 
     }
-    private void performActionThrow(float[] pokeballCoords,RectF boundingBox ,float deltaY, long duration){
+    private CompletableFuture<Boolean> performActionThrow(float[] pokeballCoords,RectF boundingBox ,float deltaY, long duration){
         Path swipePath = new Path();
         swipePath.moveTo(pokeballCoords[0], pokeballCoords[1]);
         float finalX = boundingBox.centerX();
@@ -396,23 +815,7 @@ public class ActionLooper implements Runnable {
         GestureDescription.Builder gestureBuilder = new GestureDescription.Builder();
         gestureBuilder.addStroke(new GestureDescription.StrokeDescription(swipePath, 50, Math.round(duration*controller.getThrowBoostDurationFactor())));
 
-        service.dispatchGesture(gestureBuilder.build(), new AccessibilityService.GestureResultCallback() {
-            @Override
-            public void onCompleted(GestureDescription gestureDescription) {
-                super.onCompleted(gestureDescription);
-
-                synchronized(lock){lock.notify();}
-
-            }
-
-            @Override
-            public void onCancelled(GestureDescription gestureDescription) {
-                super.onCancelled(gestureDescription);
-
-                synchronized(lock){lock.notify();}
-
-            }
-        }, null);
+        return dispatchGesture(gestureBuilder.build());
     }
     private void performActionFastThrow(float[] pokeballCoords,RectF boundingBox ,float deltaY, long duration){
 
@@ -431,54 +834,42 @@ public class ActionLooper implements Runnable {
         gestureBuilder.addStroke(new GestureDescription.StrokeDescription(swipePath, 40, Math.round(duration*controller.getThrowBoostDurationFactor())));
 
 
-        service.dispatchGesture(gestureBuilder.build(), new AccessibilityService.GestureResultCallback() {
-            @Override
-            public void onCompleted(GestureDescription gestureDescription) {
-                super.onCompleted(gestureDescription);
-
-                // Los timings son puro freestyle
-                service.mainHandler.postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
-                    }},700);
-                service.mainHandler.postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
-                    }},1000);
-
-
-            }
-
-            @Override
-            public void onCancelled(GestureDescription gestureDescription) {
-                super.onCancelled(gestureDescription);
-                Log.e(TAG,"Gesture FastThrow Cancelled " + gestureDescription.toString());
-
-                synchronized(lock){lock.notify();}
-
+        dispatchGesture(gestureBuilder.build()).thenAccept(completed -> {
+            if(!completed){
+                Tracer.event(Log.WARN, TraceEvent.GESTURE_CANCELLED, TraceEvent.GESTURE_FAST_THROW);
+                return;
             }
-        }, null);
+            // Los timings son puro freestyle
+            service.mainHandler.postDelayed(Timeline.wrap("back", new Runnable() {
+                @Override
+                public void run() {
+                    performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+                }}),700);
+            service.mainHandler.postDelayed(Timeline.wrap("back", new Runnable() {
+                @Override
+                public void run() {
+                    performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+                }}),1000);
+        });
     }
 
     private float[] resolvePokeballCoords() {
         final float[] coords = new float[2];
 
         if (controller.shouldFixedPokeball()) {
-            Log.d(TAG, "run(): Using fixed Pokeball coords");
-            return getFixedCoords();
+            return traceCoords(TraceEvent.COORDS_FIXED, getFixedCoords());
         }
         if (!controller.shouldSaveCoords() || !controller.isPokeballCoordsSet()) {
-            model_encounter.detect(lastScreenShot);
-            Log.d(TAG, "run(): Finding Pokeball: " + model_encounter.getDetectionList());
-            updateDebugEncounterDetector();
+            ModelHandler.Detector model_encounter = models.getEncounterDetector();
+            Detections pokeball = inferenceGate.detect(model_encounter, currentFrame, pokeballRegion);
+            updateDebugEncounterDetector(pokeball);
 
-            int pokeballIndex = controller.lookForMatchAtEncounter(model_encounter, "pokeball");
+            int pokeballIndex = controller.lookForMatchAtEncounter(pokeball, SettingsController.CLASS_POKEBALL);
+            Tracer.event(Log.DEBUG, TraceEvent.POKEBALL_SCANNED, pokeball.getFrameId(), pokeball.size(), pokeballIndex);
 
             if (pokeballIndex > -1) {
-                float centerX = model_encounter.getBoundingBox(pokeballIndex).centerX();
-                float centerY = model_encounter.getBoundingBox(pokeballIndex).centerY();
+                float centerX = pokeball.getCenterX(pokeballIndex);
+                float centerY = pokeball.getCenterY(pokeballIndex);
 
                 if (CustomUtils.isValidSectionForPokeball(centerX, centerY, service.displayWidth, service.displayHeight)) {
                     coords[0] = centerX;
@@ -487,17 +878,18 @@ public class ActionLooper implements Runnable {
                     if (controller.shouldSaveCoords()) {
                         controller.setPokeballCoords(coords);
                     }
-                    Log.d(TAG, "run(): Using detected Pokeball coords");
-                    return coords;
+                    return traceCoords(TraceEvent.COORDS_DETECTED, coords);
                 }
             }
 
             // fallback to fixed coords if detection failed
-            Log.d(TAG, "run(): Using (fallback) fixed Pokeball coords");
-            return getFixedCoords();
+            return traceCoords(TraceEvent.COORDS_FALLBACK, getFixedCoords());
         }
-        Log.d(TAG, "run(): Using saved Pokeball coords");
-        return controller.getPokeballCoords();
+        return traceCoords(TraceEvent.COORDS_SAVED, controller.getPokeballCoords());
+    }
+    private float[] traceCoords(int source, float[] coords) {
+        Tracer.event(Log.DEBUG, TraceEvent.POKEBALL_COORDS, source, Tracer.bits(coords[0]), Tracer.bits(coords[1]));
+        return coords;
     }
     private float[] getFixedCoords() {
         return new float[] {
@@ -505,36 +897,32 @@ public class ActionLooper implements Runnable {
                 service.displayHeight - (service.displayHeight / 16f)
         };
     }
-    private void manageThrow(int boundingBoxIndex,float[] pokeballCoords) throws InterruptedException {
-        RectF boundingBox = model_encounter.getBoundingBox(boundingBoxIndex);
-        float[] input = {boundingBox.centerX(),boundingBox.centerY(),
-                boundingBox.width(),boundingBox.height()};
-        float[] normalizedInput = model_predictor.getNormalizedInput(
-                service.displayWidth,service.displayHeight,input);
+    private void manageThrow(RectF boundingBox,float[] pokeballCoords) throws InterruptedException {
 
-        model_predictor.predict(normalizedInput);
-        updateDebugPredictor(pokeballCoords, boundingBox,
-                model_predictor.getDenormalizedDeltaY(service.displayHeight),
-                model_predictor.getDenormalizedDuration());
+        // The predictor is only needed (and loaded) when the box is not cached
+        if(!throwCache.predict(models::getPredictor, boundingBox.centerX(),boundingBox.centerY(),
+                boundingBox.width(),boundingBox.height(),
+                service.displayWidth,service.displayHeight)){
+            Log.e(TAG, "manageThrow(): predictor not loaded, no throw");
+            return;
+        }
+        float deltaY = throwCache.getDenormalizedDeltaY(service.displayHeight);
+        long duration = (long) throwCache.getDenormalizedDuration();
+        updateDebugPredictor(pokeballCoords, boundingBox, deltaY, duration);
+        Tracer.event(Log.DEBUG, TraceEvent.THROW, Tracer.bits(deltaY), duration, controller.shouldFastCatch() ? 1 : 0);
 
         if(controller.shouldFastCatch()){
-            performActionTap(new RectF(0,0,service.displayWidth,service.displayHeight));
-            synchronized(lock){lock.wait(controller.getWaitTimeout());}
+            await(performActionTap(new RectF(0,0,service.displayWidth,service.displayHeight)), TraceEvent.WAIT_GESTURE);
 
-            service.mainHandler.postDelayed(new Runnable() {
+            service.mainHandler.postDelayed(Timeline.wrap("fast_throw", new Runnable() {
                 @Override
                 public void run() {
-                    performActionFastThrow(pokeballCoords, boundingBox,
-                            model_predictor.getDenormalizedDeltaY(service.displayHeight),
-                            (long)model_predictor.getDenormalizedDuration());
-                }},500);
+                    performActionFastThrow(pokeballCoords, boundingBox, deltaY, duration);
+                }}),500);
             Thread.sleep(1700);
         }
         else{
-            performActionThrow(pokeballCoords, boundingBox,
-                    model_predictor.getDenormalizedDeltaY(service.displayHeight),
-                    (long)model_predictor.getDenormalizedDuration());
-            synchronized(lock){lock.wait(controller.getWaitTimeout());}
+            await(performActionThrow(pokeballCoords, boundingBox, deltaY, duration), TraceEvent.WAIT_GESTURE);
         }
     }
 }
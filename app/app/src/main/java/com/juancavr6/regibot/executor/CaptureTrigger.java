@@ -0,0 +1,98 @@
+package com.juancavr6.regibot.executor;
+
+import java.util.Locale;
+
+/**
+ * Decides when the next cycle captures in the event trigger mode, instead of after a fixed pause.
+ * The service reports the accessibility events that mean the screen likely changed; awaitNext() then
+ * returns no sooner than the minimum interval after it was called, as soon as such an event arrived
+ * (also one that arrived during the last cycle, usually caused by its own gesture), and at the latest
+ * after the maximum interval, for screens that change without events (the game is mostly drawn
+ * by its engine and sends few).
+ * Events are coalesced: a cycle is triggered once by the first event pending, however many followed it.
+ * Plain Java, the waits are on the monitor of the trigger.
+ */
+public class CaptureTrigger {
+
+    /**
+     * Why a cycle was triggered.
+     */
+    public enum Cause {
+        WINDOW_STATE,     // Window or dialog shown
+        CONTENT_CHANGED,  // Views of the window changed
+        MAX_INTERVAL,     // Nothing happened for the maximum interval
+        WOKEN             // wake(), the loop is pausing or stopping
+    }
+
+    private static final Cause[] CAUSES = Cause.values();
+
+    // Guarded by this
+    private Cause pending;   // First event since the last trigger, null if none
+    private boolean woken;
+    private final long[] fired = new long[CAUSES.length];
+    private long events;     // Events reported, coalesced ones included
+
+    // From any thread, usually the main one
+    public synchronized void onEvent(Cause cause) {
+        events++;
+        if (pending == null) {
+            pending = cause;
+            notifyAll();
+        }
+    }
+
+    // Make the waiting awaitNext() return now, or the next one if none is waiting yet
+    public synchronized void wake() {
+        woken = true;
+        notifyAll();
+    }
+
+    // Drop a wake() nobody waited for, so the first awaitNext() after resuming is not returned as woken
+    public synchronized void clearWake() {
+        woken = false;
+    }
+
+    /**
+     * Wait for the next capture, at least minMs and at most maxMs from now. Returns what triggered it.
+     */
+    public synchronized Cause awaitNext(long minMs, long maxMs) throws InterruptedException {
+        long now = System.nanoTime();
+        long earliest = now + minMs * 1_000_000;
+        long latest = now + Math.max(minMs, maxMs) * 1_000_000;
+        while (!woken && (now < earliest || (pending == null && now < latest))) {
+            long until = pending == null ? latest : earliest;
+            long remaining = (until - now + 999_999) / 1_000_000;
+            wait(Math.max(1, remaining));
+            now = System.nanoTime();
+        }
+
+        Cause cause;
+        if (woken) cause = Cause.WOKEN;
+        else if (pending != null) cause = pending;
+        else cause = Cause.MAX_INTERVAL;
+        woken = false;
+        pending = null;
+        fired[cause.ordinal()]++;
+        return cause;
+    }
+
+    public synchronized long getFired(Cause cause) {
+        return fired[cause.ordinal()];
+    }
+
+    public synchronized void reset() {
+        pending = null;
+        woken = false;
+        events = 0;
+        for (int i = 0; i < fired.length; i++) fired[i] = 0;
+    }
+
+    // Cycles triggered by each cause and the events they coalesced
+    public synchronized String report() {
+        StringBuilder builder = new StringBuilder("Capture triggers");
+        for (Cause cause : CAUSES) {
+            builder.append(' ').append(cause.name().toLowerCase(Locale.US)).append('=').append(fired[cause.ordinal()]);
+        }
+        return builder.append(" events=").append(events).toString();
+    }
+}
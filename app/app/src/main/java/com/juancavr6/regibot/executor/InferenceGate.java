@@ -0,0 +1,85 @@
+package com.juancavr6.regibot.executor;
+
+import android.graphics.Rect;
+
+import com.juancavr6.regibot.capture.Frame;
+import com.juancavr6.regibot.capture.FrameChangeDetector;
+import com.juancavr6.regibot.ml.Classification;
+import com.juancavr6.regibot.ml.Detections;
+import com.juancavr6.regibot.ml.ModelHandler;
+
+/**
+ * Skips inference on frames that did not change since the previous cycle.
+ * Unchanged frames reuse the last classification and detections, frames that only changed
+ * in a small area run the detectors on that area and keep the previous detections elsewhere.
+ */
+class InferenceGate {
+
+    private final FrameChangeDetector changeDetector = new FrameChangeDetector();
+
+    private int change = FrameChangeDetector.CHANGED;
+    private long previousFrameId = -1;
+
+    // Stats
+    private long classifications;
+    private long skippedClassifications;
+    private long detections;
+    private long partialDetections;
+    private long skippedDetections;
+
+    // Compare a new frame with the previous one, call once per frame before the models
+    void onFrame(Frame frame) {
+        change = changeDetector.compare(frame);
+        previousFrameId = changeDetector.getPreviousFrameId();
+    }
+
+    /**
+     * Classify the frame unless it did not change since the frame the classifier last saw.
+     * Returns null if the frame could not be classified.
+     */
+    Classification classify(ModelHandler.Classifier classifier, Frame frame) {
+        // A small moving object does not change the screen shown, only what the detectors find
+        if ((change == FrameChangeDetector.UNCHANGED || changeDetector.isMinorChange())
+                && classifier.getFrameId() == previousFrameId) {
+            skippedClassifications++;
+            return classifier.reuseFor(frame);
+        }
+        classifications++;
+        return classifier.classify(frame);
+    }
+
+    // Detect inside the region, reusing what the detector found on the previous frame when possible. Null if it failed
+    Detections detect(ModelHandler.Detector detector, Frame frame, Rect region) {
+        Detections speculated = detector.getResultFor(frame.getFrameId(), region);
+        if (speculated != null) {
+            // Already detected on this frame, speculatively while it was classified
+            return speculated;
+        }
+        if (change != FrameChangeDetector.CHANGED && detector.hasResultFor(previousFrameId, region)) {
+            if (change == FrameChangeDetector.UNCHANGED) {
+                skippedDetections++;
+                return detector.reuseFor(frame);
+            }
+            partialDetections++;
+            return detector.update(frame, region, changeDetector.getChangedRegion());
+        }
+        detections++;
+        return detector.detect(frame, region);
+    }
+
+    // False if detect() would reuse what the detector found on the previous frame
+    boolean needsDetection(ModelHandler.Detector detector, Rect region) {
+        return change == FrameChangeDetector.CHANGED || !detector.hasResultFor(previousFrameId, region);
+    }
+
+    void reset() {
+        changeDetector.reset();
+        change = FrameChangeDetector.CHANGED;
+        previousFrameId = -1;
+    }
+
+    String report() {
+        return "InferenceGate classify=" + classifications + " skipped=" + skippedClassifications
+                + " | detect=" + detections + " partial=" + partialDetections + " skipped=" + skippedDetections;
+    }
+}
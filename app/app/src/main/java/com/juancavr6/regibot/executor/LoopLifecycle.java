@@ -0,0 +1,188 @@
+package com.juancavr6.regibot.executor;
+
+/**
+ * Lifecycle of the action loop and the one thread running it.
+ * start() spawns the worker, which loads (LOADING) and then waits PAUSED until resume(); RUNNING it runs
+ * cycles until pause(), after which it is parked on the lifecycle monitor, using no CPU, until resumed
+ * or stopped. stop() lets the current cycle finish, then the worker releases the resources (STOPPING)
+ * and ends (STOPPED). The worker is never interrupted: a cycle may be using models or frames that
+ * an interrupted wait would leave half handed over.
+ * Every transition is idempotent and can be requested from any thread: starting a started loop does
+ * nothing, and starting one that is stopping loads it again on the same worker once released,
+ * so there is never more than one worker.
+ * If load() or a cycle throws, the worker reports it, releases what load() took and stops.
+ */
+public class LoopLifecycle {
+
+    public enum State { LOADING, RUNNING, PAUSED, STOPPING, STOPPED }
+
+    /**
+     * What the worker does in each state, always called on the worker thread.
+     */
+    public interface Worker {
+        // LOADING: everything a cycle needs
+        void load();
+
+        // RUNNING: one cycle, called again and again
+        void runCycle() throws InterruptedException;
+
+        // Just paused after running, before parking
+        void onPaused();
+
+        // STOPPING: free what load() took, also after a load() that threw halfway
+        void release();
+
+        // load(), a cycle or release() threw, the loop stops
+        void onFailure(RuntimeException e);
+    }
+
+    private final Worker worker;
+    private final String name;
+
+    // Guarded by this
+    private State state = State.STOPPED;
+    private boolean runAfterLoad;   // resume() while LOADING
+    private boolean restart;        // start() while STOPPING
+    private Thread thread;
+
+    public LoopLifecycle(Worker worker, String name) {
+        this.worker = worker;
+        this.name = name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // Start the worker if there is none, false if the loop was already started
+    public synchronized boolean start() {
+        if (state == State.STOPPING) {
+            restart = true;
+            return true;
+        }
+        if (state != State.STOPPED) return false;
+        state = State.LOADING;
+        runAfterLoad = false;
+        thread = new Thread(this::work, name);
+        thread.start();
+        return true;
+    }
+
+    public synchronized void pause() {
+        if (state == State.LOADING) runAfterLoad = false;
+        else if (state == State.RUNNING) state = State.PAUSED; // The cycle running finishes first
+    }
+
+    public synchronized void resume() {
+        if (state == State.LOADING) runAfterLoad = true;
+        else if (state == State.PAUSED) {
+            state = State.RUNNING;
+            notifyAll();
+        }
+    }
+
+    public synchronized void stop() {
+        restart = false;
+        if (state == State.STOPPED || state == State.STOPPING) return;
+        state = State.STOPPING;
+        notifyAll();
+    }
+
+    // Wait for the worker to end, false if it did not in time
+    public boolean awaitStopped(long timeoutMs) throws InterruptedException {
+        Thread worker;
+        synchronized (this) {
+            worker = thread;
+        }
+        if (worker == null) return true;
+        worker.join(timeoutMs);
+        return !worker.isAlive();
+    }
+
+    // Worker of the loop, null when stopped
+    synchronized Thread getThread() {
+        return thread;
+    }
+
+    private void work() {
+        try {
+            do {
+                try {
+                    worker.load();
+                    synchronized (this) {
+                        if (state == State.LOADING) state = runAfterLoad ? State.RUNNING : State.PAUSED;
+                    }
+                    runUntilStopped();
+                } catch (RuntimeException e) {
+                    fail(e);
+                } finally {
+                    // Once per load(), whether it ran until stopped or not
+                    try {
+                        worker.release();
+                    } catch (RuntimeException e) {
+                        fail(e);
+                    }
+                }
+            } while (restartAfterRelease());
+        } finally {
+            synchronized (this) {
+                state = State.STOPPED;
+                restart = false;
+                thread = null;
+            }
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        synchronized (this) {
+            state = State.STOPPING;
+            restart = false;
+        }
+        worker.onFailure(e);
+    }
+
+    private synchronized boolean restartAfterRelease() {
+        if (!restart || Thread.currentThread().isInterrupted()) return false;
+        restart = false;
+        state = State.LOADING;
+        runAfterLoad = false;
+        return true;
+    }
+
+    private void runUntilStopped() {
+        boolean ran = false; // A cycle ran since the last pause
+        while (true) {
+            boolean paused;
+            synchronized (this) {
+                if (state == State.STOPPING) return;
+                paused = state == State.PAUSED;
+            }
+            if (paused) {
+                if (ran) worker.onPaused(); // Outside the lock, pause() and stop() do not wait for it
+                ran = false;
+                synchronized (this) {
+                    while (state == State.PAUSED) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            state = State.STOPPING;
+                        }
+                    }
+                }
+                continue;
+            }
+            try {
+                worker.runCycle();
+            } catch (InterruptedException e) {
+                // Interrupted from outside, stop as the thread is asked to
+                Thread.currentThread().interrupt();
+                synchronized (this) {
+                    state = State.STOPPING;
+                }
+                return;
+            }
+            ran = true;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.juancavr6.regibot.executor;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.juancavr6.regibot.capture.Frame;
+import com.juancavr6.regibot.ml.ModelHandler;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the detector of the screen that most likely comes next while the classifier is still running.
+ * When the classifier confirms the guess the task finds the detection done for the frame, otherwise
+ * the result is simply not used. Guesses come from a TransitionTable fed with every classified screen.
+ */
+class Speculator {
+
+    private static final String TAG = "Speculator";
+
+    private static final int MIN_SAMPLES = 10;          // Transitions seen from a screen before guessing
+    private static final float MIN_PROBABILITY = 0.6f; // Guess only when the next screen is this likely
+
+    /**
+     * The detector a screen task starts with and the region it looks at.
+     */
+    static class Target {
+        final Supplier<ModelHandler.Detector> detector;
+        final Rect region;
+
+        Target(Supplier<ModelHandler.Detector> detector, Rect region) {
+            this.detector = detector;
+            this.region = region;
+        }
+    }
+
+    private final TransitionTable table = new TransitionTable();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private String previousScreen;
+    private String predictedScreen;
+    private Future<Long> running; // Detection time in nanoseconds
+
+    // Stats
+    private long cycles;
+    private long speculations;
+    private long hits;
+    private long misses;
+    private long savedNanos;
+    private long wastedNanos;
+
+    // Guess the screen of the frame and start its detector, call before classifying the frame
+    void start(Frame frame, Function<String, Target> targets) {
+        cycles++;
+        String predicted = table.predict(previousScreen, MIN_SAMPLES, MIN_PROBABILITY);
+        if (predicted == null) return;
+        Target target = targets.apply(predicted);
+        if (target == null) return;
+
+        predictedScreen = predicted;
+        speculations++;
+        running = executor.submit(() -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            ModelHandler.Detector detector = target.detector.get();
+            if (detector != null) detector.detect(frame, target.region);
+            return SystemClock.elapsedRealtimeNanos() - start;
+        });
+    }
+
+    /**
+     * Wait for the speculative detection and score the guess against the classified screen, null if
+     * the frame could not be classified. Must be called before the frame or the detectors are used.
+     */
+    void finish(String screen) throws InterruptedException {
+        if (screen != null) {
+            table.record(previousScreen, screen);
+            previousScreen = screen;
+        }
+        if (running == null) return;
+
+        long nanos = 0;
+        try {
+            nanos = running.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "finish(): speculative detection failed " + e.getCause());
+        }
+        if (predictedScreen.equals(screen)) {
+            hits++;
+            savedNanos += nanos;
+        } else {
+            misses++;
+            wastedNanos += nanos;
+        }
+        running = null;
+        predictedScreen = null;
+    }
+
+    void reset() {
+        previousScreen = null;
+    }
+
+    String report() {
+        return String.format(Locale.US,
+                "Speculator cycles=%d speculated=%d hits=%d misses=%d hitRate=%.0f%% saved=%.1f ms/cycle wasted=%.1f ms/cycle",
+                cycles, speculations, hits, misses,
+                speculations > 0 ? hits * 100f / speculations : 0f,
+                cycles > 0 ? savedNanos / 1e6f / cycles : 0f,
+                cycles > 0 ? wastedNanos / 1e6f / cycles : 0f);
+    }
+}
@@ -0,0 +1,43 @@
+package com.juancavr6.regibot.executor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts how often each screen class follows another, to guess the next screen.
+ */
+class TransitionTable {
+
+    private final Map<String, Map<String, Integer>> counts = new HashMap<>();
+    private final Map<String, Integer> totals = new HashMap<>();
+
+    void record(String from, String to) {
+        if (from == null || to == null) return;
+        Map<String, Integer> next = counts.get(from);
+        if (next == null) {
+            next = new HashMap<>();
+            counts.put(from, next);
+        }
+        next.merge(to, 1, Integer::sum);
+        totals.merge(from, 1, Integer::sum);
+    }
+
+    /**
+     * Most likely screen after the given one, or null if it was seen fewer than minSamples times
+     * or no screen follows it with at least minProbability.
+     */
+    String predict(String from, int minSamples, float minProbability) {
+        Integer total = totals.get(from);
+        if (total == null || total < minSamples) return null;
+
+        String best = null;
+        int bestCount = 0;
+        for (Map.Entry<String, Integer> entry : counts.get(from).entrySet()) {
+            if (entry.getValue() > bestCount) {
+                best = entry.getKey();
+                bestCount = entry.getValue();
+            }
+        }
+        return (float) bestCount / total >= minProbability ? best : null;
+    }
+}
@@ -0,0 +1,211 @@
+package com.juancavr6.regibot.ml;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.mediapipe.framework.image.MPImage;
+import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector;
+import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetectorResult;
+import com.juancavr6.regibot.capture.Frame;
+import com.juancavr6.regibot.capture.FrameLevel;
+import com.juancavr6.regibot.capture.ImageSpec;
+import com.juancavr6.regibot.trace.Latency;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * A detector running in MediaPipe LIVE_STREAM mode: frames are submitted without waiting and the
+ * results arrive on MediaPipe's thread, so the loop can classify or act while a detection runs.
+ * At most maxInFlight submissions are tracked; submitting one more drops the oldest, whose result
+ * is ignored when it arrives, so results never lag further and further behind the screen.
+ * Submissions MediaPipe skipped itself (it drops inputs while busy) are dropped the same way.
+ */
+public class AsyncDetector implements AutoCloseable {
+
+    private static final String TAG = "AsyncDetector";
+
+    private final ObjectDetector objectDetector;
+    private final ParcelFileDescriptor modelFile; // Mapped by the task, open while it lives
+    private final ImageSpec inputSpec;
+    private final int maxInFlight;
+    private final LabelMap labels = new LabelMap();
+
+    // Guarded by this
+    private final ArrayDeque<Pending> inFlight = new ArrayDeque<>();
+    private Pending latest; // Newest detection that completed
+    private long lastTimestamp;
+
+    // Stats
+    private long submitted;
+    private long completed;
+    private long dropped;
+    private long timeouts;
+
+    private AsyncDetector(Context context, ParcelFileDescriptor modelFile, int maxResults, RuntimeOptions runtimeOptions,
+                          ImageSpec inputSpec, int maxInFlight) {
+        this.modelFile = modelFile;
+        this.inputSpec = inputSpec;
+        this.maxInFlight = maxInFlight;
+
+        ObjectDetector.ObjectDetectorOptions options =
+                ObjectDetector.ObjectDetectorOptions.builder()
+                        .setBaseOptions(runtimeOptions.toBaseOptions(modelFile))
+                        .setRunningMode(RunningMode.LIVE_STREAM)
+                        .setMaxResults(maxResults)
+                        .setResultListener(this::onResult)
+                        .setErrorListener(e -> Log.e(TAG, "detectAsync ERROR: " + e.getMessage()))
+                        .build();
+        this.objectDetector = ObjectDetector.createFromOptions(context, options);
+    }
+
+    public ImageSpec getInputSpec() {
+        return inputSpec;
+    }
+
+    public static AsyncDetector build(Context context, String modelName, int maxResults,
+                                      RuntimeOptions runtimeOptions, int maxInFlight) {
+        ParcelFileDescriptor modelFile = null;
+        try {
+            modelFile = ModelHandler.openModelFile(context, modelName);
+            return new AsyncDetector(context, modelFile, maxResults, runtimeOptions,
+                    ModelHandler.readInputSpec(context, modelName), maxInFlight);
+        } catch (Exception e) {
+            Log.e(TAG, "build ERROR: " + e.getMessage());
+            ModelHandler.closeQuietly(modelFile);
+            return null;
+        }
+    }
+
+    /**
+     * Start detecting inside a region of the frame (frame pixels, null for the whole frame).
+     * MediaPipe copies the image before this returns, so the frame is not kept.
+     */
+    public boolean submit(Frame frame, Rect region) {
+        FrameLevel level = frame.getLevel(region == null ? inputSpec : inputSpec.withRegion(region));
+        if (level == null) return false;
+
+        Pending pending;
+        synchronized (this) {
+            if (inFlight.size() >= maxInFlight) {
+                inFlight.pollFirst();
+                dropped++;
+            }
+            // LIVE_STREAM timestamps must increase
+            lastTimestamp = Math.max(lastTimestamp + 1, SystemClock.uptimeMillis());
+            pending = new Pending(frame.getFrameId(), region, lastTimestamp, level, Latency.start());
+            inFlight.addLast(pending);
+            submitted++;
+        }
+        objectDetector.detectAsync(level.getImage(), pending.timestamp);
+        return true;
+    }
+
+    // Runs on the MediaPipe thread
+    private void onResult(ObjectDetectorResult result, MPImage input) {
+        synchronized (this) {
+            Pending pending = null;
+            Iterator<Pending> iterator = inFlight.iterator();
+            while (iterator.hasNext()) {
+                Pending candidate = iterator.next();
+                if (candidate.timestamp > result.timestampMs()) break;
+                iterator.remove();
+                if (candidate.timestamp == result.timestampMs()) pending = candidate;
+                else dropped++; // Skipped by MediaPipe, no result will come
+            }
+            if (pending == null) return; // Dropped on submit
+            Latency.record(Latency.Stage.DETECT_ASYNC, pending.submitted);
+
+            pending.detections = Detections.from(result.detections(), labels,
+                    pending.offsetX, pending.offsetY, pending.scaleX, pending.scaleY, pending.frameId, pending.region);
+            latest = pending;
+            completed++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait for the detection of the given frame and region and hand it to the detector as its latest.
+     * Returns null if it was not submitted, was dropped or did not finish in time; the caller
+     * should then detect synchronously.
+     */
+    public Detections await(ModelHandler.Detector detector, Frame frame, Rect region, long timeoutMs)
+            throws InterruptedException {
+        long frameId = frame.getFrameId();
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        synchronized (this) {
+            while (true) {
+                if (latest != null && latest.matches(frameId, region)) {
+                    detector.publish(latest.detections);
+                    return latest.detections;
+                }
+                if (!isInFlight(frameId, region)) return null;
+
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    timeouts++;
+                    return null;
+                }
+                wait(remaining);
+            }
+        }
+    }
+
+    private boolean isInFlight(long frameId, Rect region) {
+        for (Pending pending : inFlight) {
+            if (pending.matches(frameId, region)) return true;
+        }
+        return false;
+    }
+
+    public synchronized void reset() {
+        inFlight.clear();
+        latest = null;
+    }
+
+    public synchronized String report() {
+        return "AsyncDetector submitted=" + submitted + " completed=" + completed
+                + " dropped=" + dropped + " timeouts=" + timeouts + " inFlight=" + inFlight.size() + "/" + maxInFlight;
+    }
+
+    @Override
+    public void close() {
+        objectDetector.close();
+        ModelHandler.closeQuietly(modelFile);
+    }
+
+    /**
+     * A submitted detection and what is needed to map its boxes back to the frame.
+     */
+    private static class Pending {
+        final long frameId;
+        final Rect region;
+        final long timestamp;
+        final float offsetX;
+        final float offsetY;
+        final float scaleX;
+        final float scaleY;
+        final long submitted; // Latency.start() when submitted
+        Detections detections;
+
+        Pending(long frameId, Rect region, long timestamp, FrameLevel level, long submitted) {
+            this.frameId = frameId;
+            this.region = region;
+            this.timestamp = timestamp;
+            this.submitted = submitted;
+            this.offsetX = level.getOffsetX();
+            this.offsetY = level.getOffsetY();
+            this.scaleX = level.getScaleX();
+            this.scaleY = level.getScaleY();
+        }
+
+        boolean matches(long frameId, Rect region) {
+            return this.frameId == frameId && Objects.equals(this.region, region);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.juancavr6.regibot.ml;
+
+import android.os.SystemClock;
+
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.Classifications;
+
+import java.util.List;
+
+/**
+ * The result of one classification: the top class (name and LabelMap id) and score of each classifier
+ * head, the frame it was made on and when. Immutable, so it can be handed to other threads while the classifier goes on;
+ * a result reused for a later frame shares the arrays.
+ */
+public class Classification {
+
+    private final String[] classNames;
+    private final int[] classIds;
+    private final float[] scores;
+    private final long frameId;        // Frame classified, -1 if it was not a frame
+    private final long timestampNanos; // elapsedRealtimeNanos when the inference finished
+
+    private Classification(String[] classNames, int[] classIds, float[] scores, long frameId, long timestampNanos) {
+        this.classNames = classNames;
+        this.classIds = classIds;
+        this.scores = scores;
+        this.frameId = frameId;
+        this.timestampNanos = timestampNanos;
+    }
+
+    static Classification from(List<Classifications> heads, LabelMap labels, long frameId) {
+        String[] classNames = new String[heads.size()];
+        int[] classIds = new int[heads.size()];
+        float[] scores = new float[heads.size()];
+        for (int i = 0; i < heads.size(); i++) {
+            List<Category> categories = heads.get(i).categories();
+            classNames[i] = categories.isEmpty() ? null : categories.get(0).categoryName();
+            classIds[i] = categories.isEmpty() ? LabelMap.NONE : labels.idOf(categories.get(0));
+            scores[i] = categories.isEmpty() ? -1 : categories.get(0).score();
+        }
+        return new Classification(classNames, classIds, scores, frameId, SystemClock.elapsedRealtimeNanos());
+    }
+
+    // The same classification for a later frame that did not change
+    Classification withFrame(long frameId) {
+        return new Classification(classNames, classIds, scores, frameId, timestampNanos);
+    }
+
+    public long getFrameId() {
+        return frameId;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int size() {
+        return classNames.length;
+    }
+
+    public String getClassName(int index) {
+        return index < classNames.length ? classNames[index] : null;
+    }
+
+    // LabelMap id of the class, NONE if the head found nothing
+    public int getClassId(int index) {
+        return index < classIds.length ? classIds[index] : LabelMap.NONE;
+    }
+
+    public float getScore(int index) {
+        return index < scores.length ? scores[index] : -1;
+    }
+
+    public int findClassIndex(String objectClass) {
+        for (int i = 0; i < classNames.length; i++) {
+            if (objectClass.equals(classNames[i])) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return getClassName(0) + " " + getScore(0);
+    }
+}
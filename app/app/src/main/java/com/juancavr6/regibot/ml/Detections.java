@@ -0,0 +1,189 @@
+package com.juancavr6.regibot.ml;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.SystemClock;
+
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.Detection;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The result of one detection as parallel arrays, sorted by score from highest to lowest:
+ * boxes in frame coordinates (left, top, right, bottom per detection), scores and class ids from LabelMap.
+ * Built once per inference from MediaPipe's result so matching never touches the Detection objects
+ * or class names again.
+ * Immutable once built: it can be handed to other threads (overlay, logs) while the detector goes on,
+ * and a result reused for a later frame shares the arrays.
+ */
+public class Detections {
+
+    private static final float[] NO_FLOATS = new float[0];
+    private static final int[] NO_INTS = new int[0];
+
+    private final int size;
+    private final float[] boxes;
+    private final float[] scores;
+    private final int[] classIds;
+    private final long frameId;        // Frame detected on, -1 if it was not a frame
+    private final Rect region;         // Region of the frame looked at, null for the whole frame
+    private final long timestampNanos; // elapsedRealtimeNanos when the inference finished
+
+    private Detections(int capacity, long frameId, Rect region) {
+        this.size = capacity;
+        this.boxes = capacity > 0 ? new float[capacity * 4] : NO_FLOATS;
+        this.scores = capacity > 0 ? new float[capacity] : NO_FLOATS;
+        this.classIds = capacity > 0 ? new int[capacity] : NO_INTS;
+        this.frameId = frameId;
+        this.region = region != null ? new Rect(region) : null;
+        this.timestampNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    private Detections(Detections detections, long frameId) {
+        this.size = detections.size;
+        this.boxes = detections.boxes;
+        this.scores = detections.scores;
+        this.classIds = detections.classIds;
+        this.frameId = frameId;
+        this.region = detections.region;
+        this.timestampNanos = detections.timestampNanos;
+    }
+
+    /**
+     * Convert the detections found on a level image, mapping the boxes back to the frame.
+     * MediaPipe sorts its detections by score, the order is kept.
+     */
+    static Detections from(List<Detection> found, LabelMap labels, float offsetX, float offsetY,
+                           float scaleX, float scaleY, long frameId, Rect region) {
+        Detections detections = new Detections(found.size(), frameId, region);
+        for (int i = 0; i < found.size(); i++) {
+            Detection detection = found.get(i);
+            RectF box = detection.boundingBox();
+            Category category = detection.categories().get(0);
+            detections.boxes[i * 4] = offsetX + box.left * scaleX;
+            detections.boxes[i * 4 + 1] = offsetY + box.top * scaleY;
+            detections.boxes[i * 4 + 2] = offsetX + box.right * scaleX;
+            detections.boxes[i * 4 + 3] = offsetY + box.bottom * scaleY;
+            detections.scores[i] = category.score();
+            detections.classIds[i] = labels.idOf(category);
+        }
+        return detections;
+    }
+
+    /**
+     * Detections found in the changed area plus the previous ones entirely outside of it, sorted by score.
+     * The result is stamped with the given frame and region.
+     */
+    static Detections merge(Detections found, Detections previous, RectF changed, long frameId, Rect region) {
+        int kept = 0;
+        for (int i = 0; i < previous.size; i++) {
+            if (!previous.intersects(i, changed)) kept++;
+        }
+        Detections merged = new Detections(found.size + kept, frameId, region);
+        int a = 0;
+        int b = nextOutside(previous, 0, changed);
+        for (int i = 0; i < merged.size; i++) {
+            if (b >= previous.size || (a < found.size && found.scores[a] >= previous.scores[b])) {
+                merged.copy(i, found, a++);
+            } else {
+                merged.copy(i, previous, b);
+                b = nextOutside(previous, b + 1, changed);
+            }
+        }
+        return merged;
+    }
+
+    private static int nextOutside(Detections detections, int from, RectF area) {
+        while (from < detections.size && detections.intersects(from, area)) from++;
+        return from;
+    }
+
+    private boolean intersects(int index, RectF area) {
+        return boxes[index * 4] < area.right && area.left < boxes[index * 4 + 2]
+                && boxes[index * 4 + 1] < area.bottom && area.top < boxes[index * 4 + 3];
+    }
+
+    private void copy(int index, Detections from, int fromIndex) {
+        System.arraycopy(from.boxes, fromIndex * 4, boxes, index * 4, 4);
+        scores[index] = from.scores[fromIndex];
+        classIds[index] = from.classIds[fromIndex];
+    }
+
+    // The same detections for a later frame that did not change
+    Detections withFrame(long frameId) {
+        return new Detections(this, frameId);
+    }
+
+    // True if these are the detections of the given frame and region
+    public boolean matches(long frameId, Rect region) {
+        return this.frameId == frameId && Objects.equals(this.region, region);
+    }
+
+    public long getFrameId() {
+        return frameId;
+    }
+
+    public Rect getRegion() {
+        return region != null ? new Rect(region) : null;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    // Index of the best detection of the class scoring at least threshold, -1 if none
+    public int findClassIndex(int classId, float threshold) {
+        for (int i = 0; i < size; i++) {
+            if (scores[i] < threshold) break;
+            if (classIds[i] == classId) return i;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public float getScore(int index) {
+        return scores[index];
+    }
+
+    public int getClassId(int index) {
+        return classIds[index];
+    }
+
+    public String getClassName(int index) {
+        return LabelMap.nameOf(classIds[index]);
+    }
+
+    // A new RectF, for the few callers that act on a box
+    public RectF getBoundingBox(int index) {
+        return new RectF(boxes[index * 4], boxes[index * 4 + 1], boxes[index * 4 + 2], boxes[index * 4 + 3]);
+    }
+
+    public float getCenterX(int index) {
+        return (boxes[index * 4] + boxes[index * 4 + 2]) / 2;
+    }
+
+    public float getCenterY(int index) {
+        return (boxes[index * 4 + 1] + boxes[index * 4 + 3]) / 2;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(String.format(Locale.US, "%s %.2f (%.0f, %.0f, %.0f, %.0f)", getClassName(i), scores[i],
+                    boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]));
+        }
+        return builder.append(']').toString();
+    }
+}
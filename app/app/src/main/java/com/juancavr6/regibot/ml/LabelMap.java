@@ -0,0 +1,56 @@
+package com.juancavr6.regibot.ml;
+
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.juancavr6.regibot.utils.CustomUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class ids for detection and classification results.
+ * Class names are interned once into small ints shared by every model, so results and the classes the
+ * tasks look for are compared as ints. Each model keeps a LabelMap from its label index to the interned
+ * id, so a label name is cleaned (CustomUtils.trimAll) and interned the first time it is seen only.
+ */
+public class LabelMap {
+
+    public static final int NONE = -1;
+
+    // Interned names, guarded by the class
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static final List<String> names = new ArrayList<>();
+
+    private int[] byIndex = new int[0]; // Label index of the model -> class id, NONE until seen
+
+    // Id of a class name, the same for every model
+    public static synchronized int intern(String name) {
+        String clean = CustomUtils.trimAll(name);
+        Integer id = ids.get(clean);
+        if (id == null) {
+            id = names.size();
+            ids.put(clean, id);
+            names.add(clean);
+        }
+        return id;
+    }
+
+    public static synchronized String nameOf(int id) {
+        return id >= 0 && id < names.size() ? names.get(id) : null;
+    }
+
+    // Id of a category found by this map's model
+    synchronized int idOf(Category category) {
+        int index = category.index();
+        if (index < 0) return intern(category.categoryName()); // No label index, intern the name every time
+        if (index >= byIndex.length) {
+            int size = byIndex.length;
+            byIndex = Arrays.copyOf(byIndex, Math.max(index + 1, size * 2));
+            Arrays.fill(byIndex, size, byIndex.length, NONE);
+        }
+        if (byIndex[index] == NONE) byIndex[index] = intern(category.categoryName());
+        return byIndex[index];
+    }
+}
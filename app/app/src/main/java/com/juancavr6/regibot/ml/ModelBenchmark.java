@@ -0,0 +1,186 @@
+package com.juancavr6.regibot.ml;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.mediapipe.framework.image.MPImage;
+import com.google.mediapipe.tasks.core.Delegate;
+import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.imageclassifier.ImageClassifier;
+import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector;
+import com.juancavr6.regibot.capture.ImageSpec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Times every bundled model under every runtime configuration that applies to it and reports
+ * p50/p95 latency, so the fastest options can be picked for the device.
+ * Detectors and the classifier run as MediaPipe tasks and are timed per delegate; the predictor runs
+ * on a bare Interpreter and is timed per thread count and XNNPACK setting.
+ * Loads every model several times, run it off the main thread.
+ */
+public class ModelBenchmark {
+
+    private static final String TAG = "ModelBenchmark";
+
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 20;
+
+    private static final String[] TASK_MODELS = {
+            ModelHandler.MODEL_MAP, ModelHandler.MODEL_ENCOUNTER,
+            ModelHandler.MODEL_CLICKABLE, ModelHandler.MODEL_CLASSIFIER };
+    private static final int[] THREADS = { 1, 2, 4 };
+
+    public static class Result {
+        public final String modelName;
+        public final RuntimeOptions options;
+        public final float p50;
+        public final float p95;
+        public final boolean failed;
+
+        Result(String modelName, RuntimeOptions options, float p50, float p95, boolean failed) {
+            this.modelName = modelName;
+            this.options = options;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.failed = failed;
+        }
+    }
+
+    private final Context context;
+
+    public ModelBenchmark(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public List<Result> run() {
+        List<Result> results = new ArrayList<>();
+        for (String modelName : TASK_MODELS) {
+            for (Delegate delegate : Delegate.values()) {
+                results.add(runTask(modelName, new RuntimeOptions(RuntimeOptions.DEFAULT_THREADS, true, delegate)));
+            }
+        }
+        for (int threads : THREADS) {
+            for (boolean xnnpack : new boolean[]{ true, false }) {
+                results.add(runPredictor(new RuntimeOptions(threads, xnnpack, Delegate.CPU)));
+            }
+        }
+        for (Result result : results) Log.d(TAG, format(result));
+        return results;
+    }
+
+    private Result runTask(String modelName, RuntimeOptions options) {
+        long[] nanos = new long[ITERATIONS];
+        boolean classifier = ModelHandler.MODEL_CLASSIFIER.equals(modelName);
+        ImageSpec inputSpec = classifier ? ModelHandler.Classifier.INPUT_SPEC : ModelHandler.readInputSpec(context, modelName);
+        int width = inputSpec.isFullFrame() ? ModelHandler.Classifier.INPUT_SIZE : inputSpec.getWidth();
+        int height = inputSpec.isFullFrame() ? ModelHandler.Classifier.INPUT_SIZE : inputSpec.getHeight();
+        MPImage image = ModelHandler.blankImage(width, height);
+
+        try {
+            if (classifier) {
+                try (ImageClassifier task = ImageClassifier.createFromOptions(context,
+                        ImageClassifier.ImageClassifierOptions.builder()
+                                .setBaseOptions(options.toBaseOptions(modelName))
+                                .setRunningMode(RunningMode.IMAGE)
+                                .build())) {
+                    for (int i = 0; i < WARMUP; i++) task.classify(image);
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        long start = SystemClock.elapsedRealtimeNanos();
+                        task.classify(image);
+                        nanos[i] = SystemClock.elapsedRealtimeNanos() - start;
+                    }
+                }
+            } else {
+                try (ObjectDetector task = ObjectDetector.createFromOptions(context,
+                        ObjectDetector.ObjectDetectorOptions.builder()
+                                .setBaseOptions(options.toBaseOptions(modelName))
+                                .setRunningMode(RunningMode.IMAGE)
+                                .build())) {
+                    for (int i = 0; i < WARMUP; i++) task.detect(image);
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        long start = SystemClock.elapsedRealtimeNanos();
+                        task.detect(image);
+                        nanos[i] = SystemClock.elapsedRealtimeNanos() - start;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // The GPU delegate is not available on every device
+            Log.e(TAG, "runTask(): " + modelName + " " + options + " failed: " + e.getMessage());
+            return new Result(modelName, options, 0, 0, true);
+        } finally {
+            image.close();
+        }
+        return result(modelName, options, nanos);
+    }
+
+    private Result runPredictor(RuntimeOptions options) {
+        long[] nanos = new long[ITERATIONS];
+        ModelHandler.Predictor predictor = new ModelHandler.Predictor(ModelHandler.MODEL_PREDICTOR, context, options);
+        try {
+            for (int i = 0; i < WARMUP; i++) predictor.predict(0.5f, 0.5f, 0.2f, 0.1f, 1, 1);
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                predictor.predict(0.5f, 0.5f, 0.2f, 0.1f, 1, 1);
+                nanos[i] = SystemClock.elapsedRealtimeNanos() - start;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "runPredictor(): " + options + " failed: " + e.getMessage());
+            return new Result(ModelHandler.MODEL_PREDICTOR, options, 0, 0, true);
+        } finally {
+            predictor.close();
+        }
+        return result(ModelHandler.MODEL_PREDICTOR, options, nanos);
+    }
+
+    private static Result result(String modelName, RuntimeOptions options, long[] nanos) {
+        Arrays.sort(nanos);
+        return new Result(modelName, options, percentile(nanos, 50), percentile(nanos, 95), false);
+    }
+
+    // Nearest rank percentile of sorted samples, in milliseconds
+    private static float percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))] / 1e6f;
+    }
+
+    // Fastest options of each model by p50, ties broken by p95
+    public static Map<String, RuntimeOptions> best(List<Result> results) {
+        Map<String, Result> best = new HashMap<>();
+        for (Result result : results) {
+            if (result.failed) continue;
+            Result current = best.get(result.modelName);
+            if (current == null || result.p50 < current.p50
+                    || (result.p50 == current.p50 && result.p95 < current.p95)) {
+                best.put(result.modelName, result);
+            }
+        }
+        Map<String, RuntimeOptions> options = new HashMap<>();
+        for (Result result : best.values()) options.put(result.modelName, result.options);
+        return options;
+    }
+
+    public static String format(Result result) {
+        if (result.failed) return result.modelName + " [" + result.options + "] failed";
+        return String.format(Locale.US, "%s [%s] p50=%.2f ms p95=%.2f ms",
+                result.modelName, result.options, result.p50, result.p95);
+    }
+
+    public static String format(List<Result> results) {
+        StringBuilder builder = new StringBuilder();
+        for (Result result : results) builder.append(format(result)).append('\n');
+        Map<String, RuntimeOptions> best = best(results);
+        builder.append('\n');
+        for (Map.Entry<String, RuntimeOptions> entry : best.entrySet()) {
+            builder.append("Best ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+}
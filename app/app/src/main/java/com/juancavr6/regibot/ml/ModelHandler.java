@@ -3,206 +3,521 @@ package com.juancavr6.regibot.ml;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
-import com.google.mediapipe.tasks.components.containers.Classifications;
 import com.google.mediapipe.tasks.components.containers.Detection;
-import com.google.mediapipe.tasks.core.BaseOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
 import com.google.mediapipe.tasks.vision.imageclassifier.ImageClassifier;
 import com.google.mediapipe.tasks.vision.imageclassifier.ImageClassifierResult;
 import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector;
 import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetectorResult;
-import com.juancavr6.regibot.utils.CustomUtils;
+import com.juancavr6.regibot.capture.Frame;
+import com.juancavr6.regibot.capture.FrameLevel;
+import com.juancavr6.regibot.capture.ImageSpec;
+import com.juancavr6.regibot.trace.Latency;
 
 import org.tensorflow.lite.Interpreter;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ModelHandler {
 
-    public static class Predictor{
+    // Bundled models
+    public static final String MODEL_MAP = "model_detector_map_v2.tflite";
+    public static final String MODEL_ENCOUNTER = "model_detector_encounter.tflite";
+    public static final String MODEL_CLICKABLE = "model_detector_clickable_v2.tflite";
+    public static final String MODEL_CLASSIFIER = "model_classifier_screen_v5.tflite";
+    public static final String MODEL_PREDICTOR = "predictor.tflite";
+
+    private static final String MODEL_DIR = "models"; // Extracted task models, see openModelFile
+
+    /**
+     * Throw predictor run on a bare Interpreter.
+     * Input and output live in direct buffers allocated once, and the arguments of the Interpreter call
+     * are built once too, so predicting a throw allocates nothing on the Java heap.
+     * Not thread safe: one throw at a time, results are read back with the getters.
+     */
+    public static class Predictor implements AutoCloseable{
+
+        private static final int INPUT_SIZE = 4;  // centerX, centerY, width, height, normalized to the display
+        private static final int OUTPUT_SIZE = 2; // deltaY, duration, normalized
+        static final long BUFFER_BYTES = (INPUT_SIZE + OUTPUT_SIZE) * Float.BYTES;
 
         private Interpreter modelInterpreter;
-        float[][] output=new float[1][2];
+        private final ByteBuffer inputBuffer = ByteBuffer.allocateDirect(INPUT_SIZE * Float.BYTES)
+                .order(ByteOrder.nativeOrder());
+        private final ByteBuffer outputBuffer = ByteBuffer.allocateDirect(OUTPUT_SIZE * Float.BYTES)
+                .order(ByteOrder.nativeOrder());
+        // Interpreter.run wraps its arguments in a new array and map on every call, reuse ours instead
+        private final Object[] inputs = { inputBuffer };
+        private final Map<Integer, Object> outputs = new HashMap<>();
 
         public Predictor(String modelName, Context context){
+            this(modelName, context, RuntimeOptions.DEFAULT);
+        }
+
+        public Predictor(String modelName, Context context, RuntimeOptions runtimeOptions){
+            outputs.put(0, outputBuffer);
             try {
-                modelInterpreter = new Interpreter(loadModelFile(modelName, context));
+                modelInterpreter = new Interpreter(loadModelFile(modelName, context),
+                        runtimeOptions.toInterpreterOptions());
             }catch (Exception e){
                 Log.e("Interpreter",e.getStackTrace()[0].toString());
             }
         }
 
-        private MappedByteBuffer loadModelFile(String modelName, Context context) throws IOException {
-            AssetFileDescriptor fileDescriptor=context.getAssets().openFd(modelName);
-            FileInputStream inputStream=new FileInputStream(fileDescriptor.getFileDescriptor());
-            FileChannel fileChannel=inputStream.getChannel();
-            long startOffset=fileDescriptor.getStartOffset();
-            long declareLength=fileDescriptor.getDeclaredLength();
-
-            MappedByteBuffer mappedBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY,startOffset,declareLength);
-            inputStream.close();
-
-            return mappedBuffer;
-        }
-
-        public void predict(float[] input) {
-            modelInterpreter.run(input,output);
+        // Predict the throw for a target box given in display pixels
+        public void predict(float centerX, float centerY, float width, float height,
+                            int displayWidth, int displayHeight) {
+            inputBuffer.rewind();
+            inputBuffer.putFloat(centerX / displayWidth);
+            inputBuffer.putFloat(centerY / displayHeight);
+            inputBuffer.putFloat(width / displayWidth);
+            inputBuffer.putFloat(height / displayHeight);
+            inputBuffer.rewind();
+            outputBuffer.rewind();
+            modelInterpreter.runForMultipleInputsOutputs(inputs, outputs);
         }
-        public float[] getNormalizedInput (int width,int height, float[] input) {
-            float[] normalized = new float[input.length];
-            normalized[0] = input[0]/width;
-            normalized[1] = input[1]/height;
-            normalized[2] = input[2]/width;
-            normalized[3] = input[3]/height;
 
-            return normalized;
+        // Run once on a synthetic input so the first real throw does not pay for initialization
+        public void warmUp() {
+            predict(0.5f, 0.5f, 0.1f, 0.1f, 1, 1);
         }
 
-
-        public float[][] getOutputArray(){
-            return output;
-        }
         public float getDeltaY(){
-            return output[0][0];
+            return outputBuffer.getFloat(0);
         }
         public float getDuration(){
-            return output[0][1];
+            return outputBuffer.getFloat(Float.BYTES);
         }
 
         public float getDenormalizedDeltaY(int height){
-            return output[0][0]*height;
+            return getDeltaY()*height;
         }
         public float getDenormalizedDuration(){
-            return output[0][1]*1000;
+            return getDuration()*1000;
+        }
+
+        @Override
+        public void close(){
+            if(modelInterpreter != null) modelInterpreter.close();
         }
     }
-    public static class Classifier{
+    /**
+     * Screen classifier. Every classification returns an immutable Classification; the latest one is kept
+     * so unchanged frames can reuse it. Inference is serialized, results can be read from any thread.
+     */
+    public static class Classifier implements AutoCloseable{
+        public static final int INPUT_SIZE = 256;
+        // The classifier was trained on stretched screenshots
+        public static final ImageSpec INPUT_SPEC = new ImageSpec(INPUT_SIZE, INPUT_SIZE, false);
+
         private final ImageClassifier imageClassifier  ;
-        private List<Classifications> classification ;
-        private Classifier(ImageClassifier imageClassifier){this.imageClassifier = imageClassifier;}
+        private final LabelMap labels = new LabelMap();
+        private volatile Classification latest ;
+        private final ParcelFileDescriptor modelFile; // Mapped by the task, open while it lives
+        private Classifier(ImageClassifier imageClassifier, ParcelFileDescriptor modelFile){
+            this.imageClassifier = imageClassifier;
+            this.modelFile = modelFile;
+        }
 
-        public void classify(Bitmap imageBitMap){
-            MPImage mpImage = new BitmapImageBuilder(Bitmap.createScaledBitmap(imageBitMap, 256, 256, true)).build();
+        public Classification classify(Bitmap imageBitMap){
+            MPImage mpImage = new BitmapImageBuilder(Bitmap.createScaledBitmap(imageBitMap, INPUT_SIZE, INPUT_SIZE, true)).build();
+            return classify(mpImage);
+        }
+
+        // Classify the frame using its shared INPUT_SPEC image, null if it could not be rendered
+        public Classification classify(Frame frame){
+            FrameLevel level = frame.getLevel(INPUT_SPEC);
+            if(level == null) return null;
+            return classify(level.getImage(), frame.getFrameId());
+        }
+
+        // The image must be already scaled to INPUT_SIZE x INPUT_SIZE
+        public Classification classify(MPImage mpImage){
+            return classify(mpImage, -1);
+        }
+
+        private synchronized Classification classify(MPImage mpImage, long frameId){
+            long start = Latency.start();
             ImageClassifierResult classifierResult = imageClassifier.classify(mpImage);
+            if(frameId >= 0) Latency.record(Latency.Stage.CLASSIFY, start); // Not the warm up
 
-            classification = classifierResult.classificationResult().classifications();
+            Classification classification = Classification.from(
+                    classifierResult.classificationResult().classifications(), labels, frameId);
+            latest = classification;
+            return classification;
         }
 
+        // Run once on a blank image so the first real frame does not pay for initialization
+        public void warmUp(){
+            MPImage blank = blankImage(INPUT_SIZE, INPUT_SIZE);
+            classify(blank);
+            blank.close();
+            latest = null;
+        }
 
-        public String getClassName(int index){
-            if(classification == null) return null;
-            else return classification.get(index).categories().get(0).categoryName();
+        // Latest classification, null if none
+        public Classification getLatest() {
+            return latest;
         }
 
-        public float getScore(int index) {
-            if(classification == null) return -1;
-            else return classification.get(index).categories().get(0).score();
+        // Frame of the latest classification, -1 if unknown
+        public long getFrameId() {
+            Classification classification = latest;
+            return classification != null ? classification.getFrameId() : -1;
         }
 
-        public List<Classifications> getClassificationList(){
+        // Keep the latest classification for a frame that did not change
+        public Classification reuseFor(Frame frame) {
+            Classification classification = latest;
+            if(classification == null) return null;
+            classification = classification.withFrame(frame.getFrameId());
+            latest = classification;
             return classification;
         }
 
-        public int findClassIndex(String objectClass){
-            if(classification == null) return -1;
-            for(int i = 0 ; i < classification.size() ; i++){
-                if(this.getClassName(i).equals(objectClass)) return i;
-            }
-            return -1;
+        @Override
+        public synchronized void close(){
+            imageClassifier.close();
+            closeQuietly(modelFile);
+            latest = null;
         }
     }
-    public static class Detector{
+
+    /**
+     * Object detector. Every detection returns an immutable Detections stamped with its frame and region;
+     * the latest one is kept so unchanged frames can reuse it. Inference is serialized, so the loop and
+     * speculative or pipelined work can share a detector, and results can be read from any thread.
+     */
+    public static class Detector implements AutoCloseable{
         private final ObjectDetector objectDetector ;
-        private List<Detection> detections ;
-        private Detector(ObjectDetector objectDetector){this.objectDetector = objectDetector;}
+        private final ImageSpec inputSpec;
+        private final ParcelFileDescriptor modelFile; // Mapped by the task, open while it lives
+        private final LabelMap labels = new LabelMap();
+        private final Latency.Stage stage; // Timed as, per model
+        private volatile Detections latest ; // Boxes in frame coordinates, null if the last detection failed
+        private Detector(ObjectDetector objectDetector, ImageSpec inputSpec, ParcelFileDescriptor modelFile,
+                         Latency.Stage stage){
+            this.objectDetector = objectDetector;
+            this.inputSpec = inputSpec;
+            this.modelFile = modelFile;
+            this.stage = stage;
+        }
 
-        public void detect(Bitmap imageBitMap){
+        public Detections detect(Bitmap imageBitMap){
+            return detect(new BitmapImageBuilder(imageBitMap).build());
+        }
 
-            MPImage mpImage = new BitmapImageBuilder(imageBitMap).build();
+        // Detect on the frame image shared by every model with the same input size
+        public Detections detect(Frame frame){
+            return detect(frame, null);
+        }
+
+        // Detect only inside a region of the frame (frame pixels), boxes are still in frame coordinates. Null if it failed
+        public Detections detect(Frame frame, Rect region){
+            Detections found = detectInRegion(frame, region, frame.getFrameId(), region);
+            latest = found;
+            return found;
+        }
+
+        public synchronized Detections detect(MPImage mpImage){
             ObjectDetectorResult detectionResult = objectDetector.detect(mpImage);
 
-            detections = detectionResult.detections();
+            Detections found = Detections.from(detectionResult.detections(), labels, 0, 0, 1, 1, -1, null);
+            latest = found;
+            return found;
         }
 
-        public RectF getBoundingBox(int index) {
-            if(detections == null) return null;
-            else return detections.get(index).boundingBox();
+        /**
+         * Detect again only where the frame changed, keeping the previous detections elsewhere.
+         * The previous detections must come from the frame before this one with the same region.
+         * The changed part is widened to a tile of the region (see tileOf), so a frame only ever
+         * renders a few inputs per region whatever moved.
+         */
+        public Detections update(Frame frame, Rect region, Rect changedRegion){
+            Detections previous = latest;
+            Rect bounds = region != null ? new Rect(region) : new Rect(0, 0, frame.getWidth(), frame.getHeight());
+            Rect changed = new Rect(bounds);
+            if(!changed.intersect(changedRegion)){
+                return reuseFor(frame);
+            }
+            Rect area = tileOf(bounds, changed);
+            if(area.equals(bounds)){
+                return detect(frame, region);
+            }
+            Detections found = detectInRegion(frame, area, frame.getFrameId(), area);
+            if(found == null || previous == null){
+                return detect(frame, region);
+            }
+
+            Detections merged = Detections.merge(found, previous, new RectF(area), frame.getFrameId(), region);
+            latest = merged;
+            return merged;
         }
 
-        public String getClassName(int index) {
-            if(detections == null) return null;
-            else return detections.get(index).categories().get(0).categoryName();
+        /**
+         * Smallest tile of the bounds containing the changed part. On each axis a tile is one of the halves
+         * starting at 0, 1/4 and 1/2 of the bounds, or the whole bounds: at most 16 tiles per region.
+         */
+        private static Rect tileOf(Rect bounds, Rect changed){
+            int[] x = spanOf(bounds.left, bounds.right, changed.left, changed.right);
+            int[] y = spanOf(bounds.top, bounds.bottom, changed.top, changed.bottom);
+            return new Rect(x[0], y[0], x[1], y[1]);
         }
 
-        public float getScore(int index) {
-            if(detections == null) return -1;
-            else return detections.get(index).categories().get(0).score();
+        private static int[] spanOf(int min, int max, int low, int high){
+            int quarter = (max - min) / 4;
+            for(int i = 0; i <= 2; i++){
+                int start = min + i * quarter;
+                int end = i == 2 ? max : start + 2 * quarter;
+                if(low >= start && high <= end) return new int[]{start, end};
+            }
+            return new int[]{min, max};
         }
 
-        public List<Detection> getDetectionList(){
+        // Keep the latest detections for a frame that did not change
+        public Detections reuseFor(Frame frame) {
+            Detections detections = latest;
+            if(detections == null) return null;
+            detections = detections.withFrame(frame.getFrameId());
+            latest = detections;
             return detections;
         }
 
-        public int findClassIndex(String objectClass,float threshold){
-            if(detections == null) return -1;
-            for(int i = 0 ; i < detections.size() ; i++){
+        // True if the latest detection was made on the given frame with the given region
+        public boolean hasResultFor(long frameId, Rect region) {
+            Detections detections = latest;
+            return detections != null && detections.matches(frameId, region);
+        }
 
-                if (this.getScore(i) < threshold ) break;
-                else if(CustomUtils.trimAll(this.getClassName(i)).equals(objectClass)) return i;
+        // Latest detections if they were made on the given frame with the given region, otherwise null
+        public Detections getResultFor(long frameId, Rect region) {
+            Detections detections = latest;
+            return detections != null && detections.matches(frameId, region) ? detections : null;
+        }
 
-            }
-            return -1;
+        private synchronized Detections detectInRegion(Frame frame, Rect region, long frameId, Rect resultRegion){
+            FrameLevel level = frame.getLevel(region == null ? inputSpec : inputSpec.withRegion(region));
+            if(level == null) return null;
+
+            long start = Latency.start();
+            List<Detection> found = objectDetector.detect(level.getImage()).detections();
+            Latency.record(stage, start);
+            return Detections.from(found, labels, level.getOffsetX(), level.getOffsetY(),
+                    level.getScaleX(), level.getScaleY(), frameId, resultRegion);
+        }
+
+        // Take detections made elsewhere (an AsyncDetector), already stamped with their frame and region
+        void publish(Detections found){
+            latest = found;
+        }
+
+        // Run once on a blank image of the model input size so the first real frame does not pay for initialization
+        public void warmUp(){
+            MPImage blank = inputSpec.isFullFrame() ? blankImage(Classifier.INPUT_SIZE, Classifier.INPUT_SIZE)
+                    : blankImage(inputSpec.getWidth(), inputSpec.getHeight());
+            detect(blank);
+            blank.close();
+            latest = null;
+        }
+
+        public ImageSpec getInputSpec() {
+            return inputSpec;
+        }
+
+        // Latest detections, null if none
+        public Detections getLatest(){
+            return latest;
+        }
+
+        @Override
+        public synchronized void close(){
+            objectDetector.close();
+            closeQuietly(modelFile);
+            latest = null;
         }
     }
 
     public static Detector buildDetector(Context context,String modelName,int maxResults){
+        return buildDetector(context, modelName, maxResults, RuntimeOptions.DEFAULT);
+    }
+    public static Detector buildDetector(Context context,String modelName,int maxResults,RuntimeOptions runtimeOptions){
 
+        ParcelFileDescriptor modelFile = null;
         try {
+            modelFile = openModelFile(context, modelName);
             ObjectDetector.ObjectDetectorOptions options =
                     ObjectDetector.ObjectDetectorOptions.builder()
-                            .setBaseOptions(BaseOptions.builder().setModelAssetPath(modelName).build())
+                            .setBaseOptions(runtimeOptions.toBaseOptions(modelFile))
                             .setRunningMode(RunningMode.IMAGE)
                             .setMaxResults(maxResults)
                             .build();
-            return new Detector(ObjectDetector.createFromOptions(context, options));
+            return new Detector(ObjectDetector.createFromOptions(context, options),
+                    readInputSpec(context, modelName), modelFile, detectStage(modelName));
         }
         catch (Exception e) {
             Log.e("TAG", "buildDetector ERROR: "+ e.getMessage() );
-
+            closeQuietly(modelFile);
             return null;
         }
 
     }
+    private static Latency.Stage detectStage(String modelName){
+        switch (modelName){
+            case MODEL_ENCOUNTER:
+                return Latency.Stage.DETECT_ENCOUNTER;
+            case MODEL_CLICKABLE:
+                return Latency.Stage.DETECT_CLICKABLE;
+            default:
+                return Latency.Stage.DETECT_MAP;
+        }
+    }
     public static Classifier buildClassifier(Context context,String modelName,int maxResults){
+        return buildClassifier(context, modelName, maxResults, RuntimeOptions.DEFAULT);
+    }
+    public static Classifier buildClassifier(Context context,String modelName,int maxResults,RuntimeOptions runtimeOptions){
 
+        ParcelFileDescriptor modelFile = null;
         try {
-
+            modelFile = openModelFile(context, modelName);
             ImageClassifier.ImageClassifierOptions options =
                     ImageClassifier.ImageClassifierOptions.builder()
-                            .setBaseOptions(
-                                    BaseOptions.builder().setModelAssetPath(modelName).build())
+                            .setBaseOptions(runtimeOptions.toBaseOptions(modelFile))
                             .setRunningMode(RunningMode.IMAGE)
                             .setMaxResults(maxResults)
                             .build();
-            return new Classifier(ImageClassifier.createFromOptions(context, options));
+            return new Classifier(ImageClassifier.createFromOptions(context, options), modelFile);
         } catch (Exception e) {
             Log.e("TAG", "buildClassifier ERROR: "+ e.getMessage() );
+            closeQuietly(modelFile);
             return null;
         }
 
 
     }
     public static Predictor buildPredictor(Context context,String modelName){
-        return new Predictor(modelName, context);
+        return buildPredictor(context, modelName, RuntimeOptions.DEFAULT);
+    }
+    // Null if the model failed to load, like the other builders
+    public static Predictor buildPredictor(Context context,String modelName,RuntimeOptions runtimeOptions){
+        Predictor predictor = new Predictor(modelName, context, runtimeOptions);
+        return predictor.modelInterpreter != null ? predictor : null;
+    }
+
+    // Input size of a detector model, frames are scaled to it once and shared between models.
+    // Read from the model file itself, building an Interpreter just for it would slow every load down
+    public static ImageSpec readInputSpec(Context context, String modelName){
+        try {
+            int[] shape = TfliteModel.inputShape(loadModelFile(modelName, context)); // [1, height, width, channels]
+            return new ImageSpec(shape[2], shape[1], true);
+        } catch (Exception e) {
+            Log.e("TAG", "readInputSpec ERROR: "+ e.getMessage() );
+            return ImageSpec.FULL_FRAME;
+        }
+    }
+
+    /**
+     * Memory a model takes, estimated from the sizes known for it: the model file, read or mapped whole, and
+     * its float RGB input tensor. What the runtime allocates on top of that is not known, it is a lower bound.
+     */
+    static long footprint(Context context, String modelName, ImageSpec inputSpec){
+        int width = inputSpec.isFullFrame() ? Classifier.INPUT_SIZE : inputSpec.getWidth();
+        int height = inputSpec.isFullFrame() ? Classifier.INPUT_SIZE : inputSpec.getHeight();
+        return footprint(context, modelName, (long) width * height * 3 * Float.BYTES);
+    }
+
+    static long footprint(Context context, String modelName, long bufferBytes){
+        try (AssetFileDescriptor asset = context.getAssets().openFd(modelName)) {
+            return asset.getLength() + bufferBytes;
+        } catch (IOException e) {
+            Log.e("TAG", "footprint ERROR: " + e.getMessage());
+            return bufferBytes;
+        }
+    }
+
+    static MPImage blankImage(int width, int height){
+        return new BitmapImageBuilder(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)).build();
+    }
+
+    static MappedByteBuffer loadModelFile(String modelName, Context context) throws IOException {
+        AssetFileDescriptor fileDescriptor=context.getAssets().openFd(modelName);
+        FileInputStream inputStream=new FileInputStream(fileDescriptor.getFileDescriptor());
+        FileChannel fileChannel=inputStream.getChannel();
+        long startOffset=fileDescriptor.getStartOffset();
+        long declareLength=fileDescriptor.getDeclaredLength();
+
+        MappedByteBuffer mappedBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY,startOffset,declareLength);
+        inputStream.close();
+
+        return mappedBuffer;
+    }
+
+    /**
+     * Model file for the MediaPipe tasks, opened from a copy of the asset in the app files.
+     * MediaPipe reads an asset path or buffer into memory, but it maps a file descriptor; asset
+     * descriptors point into the APK with an offset it does not take, so each model is extracted once.
+     * The copy is reused only if its content matches the asset, a bad copy is extracted again.
+     */
+    static synchronized ParcelFileDescriptor openModelFile(Context context, String modelName) throws IOException {
+        File file = new File(new File(context.getNoBackupFilesDir(), MODEL_DIR), modelName);
+        long installed = new File(context.getApplicationInfo().sourceDir).lastModified();
+        try (AssetFileDescriptor asset = context.getAssets().openFd(modelName)) {
+            // The channel of the whole APK, the asset starts at its start offset; the descriptor is closed with the asset
+            FileChannel apk = new FileInputStream(asset.getFileDescriptor()).getChannel();
+            if (file.lastModified() < installed || !sameContent(apk, asset, file)) {
+                File parent = file.getParentFile();
+                if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                    throw new IOException("Cannot create " + parent);
+                }
+                File temp = new File(file.getPath() + ".tmp");
+                try (FileOutputStream output = new FileOutputStream(temp)) {
+                    long position = asset.getStartOffset();
+                    long end = position + asset.getLength();
+                    while (position < end) {
+                        long copied = apk.transferTo(position, end - position, output.getChannel());
+                        if (copied <= 0) throw new IOException("Truncated asset " + modelName);
+                        position += copied;
+                    }
+                }
+                if (!temp.renameTo(file)) throw new IOException("Cannot extract " + modelName);
+            }
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    // Compare the extracted copy with the asset, both mapped, the pages are then cached for the model load
+    private static boolean sameContent(FileChannel apk, AssetFileDescriptor asset, File file) throws IOException {
+        if (file.length() != asset.getLength()) return false;
+        try (FileInputStream input = new FileInputStream(file)) {
+            MappedByteBuffer expected = apk.map(FileChannel.MapMode.READ_ONLY, asset.getStartOffset(), asset.getLength());
+            MappedByteBuffer actual = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            return expected.equals(actual);
+        }
+    }
+
+    static void closeQuietly(ParcelFileDescriptor modelFile) {
+        if (modelFile == null) return;
+        try {
+            modelFile.close();
+        } catch (IOException e) {
+            Log.e("TAG", "closeQuietly ERROR: " + e.getMessage());
+        }
     }
 
 
@@ -0,0 +1,347 @@
+package com.juancavr6.regibot.ml;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.juancavr6.regibot.controller.SettingsController;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the bundled models on demand.
+ * load() builds the classifier, which every cycle needs, and prefetches the others in the background
+ * in the order they are usually needed; a task asking for a model that is not ready yet waits for it.
+ * Each model is built once, by whichever thread gets to it first.
+ * With warm-up on, every model is also run twice on a synthetic input right after it is built:
+ * the first (cold) run pays for the one-time graph and kernel setup so real frames do not.
+ * The memory each model takes is estimated from its file and input sizes; when the models go over the
+ * memory budget or the system asks to trim memory, the least recently used detectors are closed at the
+ * next trim() and built again the next time a task asks for them.
+ */
+public class ModelLoader {
+
+    private static final String TAG = "ModelLoader";
+
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "ModelPrefetch"));
+
+    private final LazyModel<ModelHandler.Classifier> classifier;
+    private final LazyModel<ModelHandler.Detector> mapDetector;
+    private final LazyModel<ModelHandler.Detector> clickableDetector;
+    private final LazyModel<ModelHandler.Detector> encounterDetector;
+    private final LazyModel<ModelHandler.Predictor> predictor;
+    private final LazyModel<AsyncDetector> asyncMapDetector; // Null unless pipelined detection is on
+
+    // Closed when memory runs short, the classifier and predictor run (almost) every cycle and the
+    // live stream detector may be in use by MediaPipe at any time
+    private final List<LazyModel<ModelHandler.Detector>> evictable;
+
+    private final long budgetBytes; // 0 for no limit
+    private volatile boolean trimAll;  // The system is about to kill processes, since the last trim()
+    private volatile boolean trimOne;  // The system asked to trim memory, since the last trim()
+    private Thread owner;              // Thread that loaded the models, the only one that trims them
+    private long evictions;
+
+    private static final int MAX_IN_FLIGHT = 2; // Pipelined detections tracked before dropping the oldest
+
+    public ModelLoader(Context context, SettingsController controller) {
+        budgetBytes = controller.getModelMemoryBudget() * 1024L * 1024L;
+        int maxResults = controller.getMaxResults();
+        boolean warmUp = controller.shouldWarmUpModels();
+        classifier = new LazyModel<>(ModelHandler.MODEL_CLASSIFIER, () -> ModelHandler.buildClassifier(context,
+                ModelHandler.MODEL_CLASSIFIER, maxResults, controller.getRuntimeOptions(ModelHandler.MODEL_CLASSIFIER)),
+                warmUp ? ModelHandler.Classifier::warmUp : null,
+                model -> ModelHandler.footprint(context, ModelHandler.MODEL_CLASSIFIER, ModelHandler.Classifier.INPUT_SPEC));
+        mapDetector = new LazyModel<>(ModelHandler.MODEL_MAP, () -> ModelHandler.buildDetector(context,
+                ModelHandler.MODEL_MAP, maxResults, controller.getRuntimeOptions(ModelHandler.MODEL_MAP)),
+                warmUp ? ModelHandler.Detector::warmUp : null,
+                model -> ModelHandler.footprint(context, ModelHandler.MODEL_MAP, model.getInputSpec()));
+        clickableDetector = new LazyModel<>(ModelHandler.MODEL_CLICKABLE, () -> ModelHandler.buildDetector(context,
+                ModelHandler.MODEL_CLICKABLE, maxResults, controller.getRuntimeOptions(ModelHandler.MODEL_CLICKABLE)),
+                warmUp ? ModelHandler.Detector::warmUp : null,
+                model -> ModelHandler.footprint(context, ModelHandler.MODEL_CLICKABLE, model.getInputSpec()));
+        encounterDetector = new LazyModel<>(ModelHandler.MODEL_ENCOUNTER, () -> ModelHandler.buildDetector(context,
+                ModelHandler.MODEL_ENCOUNTER, maxResults, controller.getRuntimeOptions(ModelHandler.MODEL_ENCOUNTER)),
+                warmUp ? ModelHandler.Detector::warmUp : null,
+                model -> ModelHandler.footprint(context, ModelHandler.MODEL_ENCOUNTER, model.getInputSpec()));
+        predictor = new LazyModel<>(ModelHandler.MODEL_PREDICTOR, () -> ModelHandler.buildPredictor(context,
+                ModelHandler.MODEL_PREDICTOR, controller.getRuntimeOptions(ModelHandler.MODEL_PREDICTOR)),
+                warmUp ? ModelHandler.Predictor::warmUp : null,
+                model -> ModelHandler.footprint(context, ModelHandler.MODEL_PREDICTOR, ModelHandler.Predictor.BUFFER_BYTES));
+        asyncMapDetector = !controller.shouldPipelineDetection() ? null
+                : new LazyModel<>(ModelHandler.MODEL_MAP + " (live stream)", () -> AsyncDetector.build(context,
+                ModelHandler.MODEL_MAP, maxResults, controller.getRuntimeOptions(ModelHandler.MODEL_MAP), MAX_IN_FLIGHT),
+                null,
+                model -> ModelHandler.footprint(context, ModelHandler.MODEL_MAP, model.getInputSpec()));
+        evictable = Arrays.asList(mapDetector, clickableDetector, encounterDetector);
+    }
+
+    // Build the classifier on the calling thread and prefetch the rest, most sessions start on the map
+    public void load() {
+        owner = Thread.currentThread();
+        long start = SystemClock.elapsedRealtime();
+        classifier.get();
+        Log.d(TAG, "load(): ready to act after " + (SystemClock.elapsedRealtime() - start) + " ms");
+
+        mapDetector.prefetch(prefetcher);
+        if (asyncMapDetector != null) asyncMapDetector.prefetch(prefetcher);
+        clickableDetector.prefetch(prefetcher);
+        encounterDetector.prefetch(prefetcher);
+        predictor.prefetch(prefetcher);
+        prefetcher.shutdown();
+    }
+
+    public ModelHandler.Classifier getClassifier() {
+        return classifier.get();
+    }
+
+    public ModelHandler.Detector getMapDetector() {
+        return mapDetector.get();
+    }
+
+    public ModelHandler.Detector getClickableDetector() {
+        return clickableDetector.get();
+    }
+
+    public ModelHandler.Detector getEncounterDetector() {
+        return encounterDetector.get();
+    }
+
+    public ModelHandler.Predictor getPredictor() {
+        return predictor.get();
+    }
+
+    // Map detector running in LIVE_STREAM mode, null unless pipelined detection is on
+    public AsyncDetector getAsyncMapDetector() {
+        return asyncMapDetector != null ? asyncMapDetector.get() : null;
+    }
+
+    /**
+     * Called by the system on any thread, the models are closed at the next trim().
+     * UI_HIDDEN is ignored: the app UI is hidden every time the game is brought to the front.
+     */
+    public void onTrimMemory(int level) {
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) trimAll = true;
+        else if (level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) trimOne = true;
+    }
+
+    /**
+     * Close least recently used detectors until the models fit the budget, all of them when memory is
+     * critical and one when the system asked to trim otherwise.
+     * Only call it on the thread that called load() when no detector is in use (between cycles: work on
+     * other threads, such as speculative detection, is awaited within the cycle), they are closed
+     * without waiting.
+     */
+    public void trim() {
+        if (Thread.currentThread() != owner)
+            throw new IllegalStateException("trim() on " + Thread.currentThread().getName() + ", not the loop thread");
+        boolean all = trimAll;
+        boolean one = trimOne;
+        trimAll = false;
+        trimOne = false;
+        if (all) {
+            // The game could be killed next, keep only what every cycle needs
+            for (LazyModel<ModelHandler.Detector> model : evictable) evict(model, "memory critical");
+            return;
+        }
+        if (one) evict(leastRecentlyUsed(), "trim memory");
+        if (budgetBytes <= 0) return;
+        while (footprint() > budgetBytes) {
+            LazyModel<ModelHandler.Detector> model = leastRecentlyUsed();
+            if (model == null) break;
+            evict(model, "over budget");
+        }
+    }
+
+    private LazyModel<ModelHandler.Detector> leastRecentlyUsed() {
+        LazyModel<ModelHandler.Detector> oldest = null;
+        for (LazyModel<ModelHandler.Detector> model : evictable) {
+            if (model.isLoaded() && (oldest == null || model.lastUsed < oldest.lastUsed)) oldest = model;
+        }
+        return oldest;
+    }
+
+    private void evict(LazyModel<ModelHandler.Detector> model, String reason) {
+        if (model == null || !model.isLoaded()) return;
+        long bytes = model.footprintBytes;
+        model.close();
+        evictions++;
+        Log.d(TAG, "trim(): closed " + model.name + " (" + bytes / 1024 + " KB), " + reason);
+    }
+
+    // Memory taken by the models loaded now, as estimated
+    public long footprint() {
+        long bytes = classifier.footprint() + predictor.footprint()
+                + (asyncMapDetector != null ? asyncMapDetector.footprint() : 0);
+        for (LazyModel<ModelHandler.Detector> model : evictable) bytes += model.footprint();
+        return bytes;
+    }
+
+    // Close every model, the loader cannot be used afterwards
+    public void close() {
+        prefetcher.shutdownNow();
+        try {
+            // Let a model being prefetched finish so it can be closed
+            if (!prefetcher.awaitTermination(5, TimeUnit.SECONDS)) Log.e(TAG, "close(): prefetch still running");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        classifier.close();
+        for (LazyModel<ModelHandler.Detector> model : evictable) model.close();
+        predictor.close();
+        if (asyncMapDetector != null) asyncMapDetector.close();
+        Log.d(TAG, "close(): " + report());
+    }
+
+    // Load, cold and warm run times and footprint of the models built so far
+    public String report() {
+        return "ModelLoader " + classifier.report() + ", " + mapDetector.report() + ", "
+                + clickableDetector.report() + ", " + encounterDetector.report() + ", " + predictor.report()
+                + (asyncMapDetector != null ? ", " + asyncMapDetector.report() : "")
+                + String.format(Locale.US, ", resident=%d KB budget=%s evictions=%d", footprint() / 1024,
+                budgetBytes > 0 ? budgetBytes / 1024 + " KB" : "none", evictions);
+    }
+
+    interface WarmUp<T> {
+        void run(T model);
+    }
+
+    interface Footprint<T> {
+        long of(T model);
+    }
+
+    /**
+     * A model built by the prefetcher or by the first thread that needs it, and built again after close().
+     */
+    static class LazyModel<T extends AutoCloseable> {
+        private final String name;
+        private final Callable<T> factory;
+        private final WarmUp<T> warmUp;
+        private final Footprint<T> footprint;
+        private volatile FutureTask<T> task;
+
+        // Written by the thread that builds the model, read after the task is done
+        private volatile float loadMs = -1;
+        private volatile float coldMs = -1;
+        private volatile float warmMs = -1;
+        // Estimated from known sizes rather than measured: the native heap also grows with what other
+        // threads allocate meanwhile, and it does not show mapped model files
+        private volatile long footprintBytes;
+        private volatile long lastUsed;
+        private volatile int loads;
+
+        LazyModel(String name, Callable<T> factory, WarmUp<T> warmUp, Footprint<T> footprint) {
+            this.name = name;
+            this.factory = factory;
+            this.warmUp = warmUp;
+            this.footprint = footprint;
+            this.task = newTask();
+        }
+
+        private FutureTask<T> newTask() {
+            return new FutureTask<>(() -> {
+                long start = SystemClock.elapsedRealtimeNanos();
+                T model = factory.call();
+                loadMs = (SystemClock.elapsedRealtimeNanos() - start) / 1e6f;
+                if (model != null && warmUp != null) {
+                    start = SystemClock.elapsedRealtimeNanos();
+                    warmUp.run(model);
+                    coldMs = (SystemClock.elapsedRealtimeNanos() - start) / 1e6f;
+                    start = SystemClock.elapsedRealtimeNanos();
+                    warmUp.run(model);
+                    warmMs = (SystemClock.elapsedRealtimeNanos() - start) / 1e6f;
+                }
+                footprintBytes = model != null ? footprint.of(model) : 0;
+                loads++;
+                Log.d(TAG, report() + " on " + Thread.currentThread().getName());
+                return model;
+            });
+        }
+
+        String report() {
+            if (loadMs < 0) return name + " not loaded";
+            String resident = isLoaded() ? " " + footprintBytes / 1024 + " KB" : " closed";
+            String reloads = loads > 1 ? " loads=" + loads : "";
+            if (coldMs < 0) return String.format(Locale.US, "%s load=%.1f ms%s%s", name, loadMs, resident, reloads);
+            return String.format(Locale.US, "%s load=%.1f ms cold=%.1f ms warm=%.1f ms%s%s",
+                    name, loadMs, coldMs, warmMs, resident, reloads);
+        }
+
+        void prefetch(ExecutorService executor) {
+            FutureTask<T> task = this.task;
+            if (!task.isDone()) executor.execute(task);
+        }
+
+        boolean isLoaded() {
+            FutureTask<T> task = this.task;
+            return task.isDone() && result(task) != null;
+        }
+
+        long footprint() {
+            return isLoaded() ? footprintBytes : 0;
+        }
+
+        /**
+         * Close the model if it was built, the next get() builds it again.
+         * The model must not be in use or being built: evicted models are always built already and
+         * ModelLoader.close() stops the prefetcher first.
+         */
+        synchronized void close() {
+            FutureTask<T> task = this.task;
+            this.task = newTask();
+            if (!task.isDone()) {
+                task.cancel(false); // Never built
+                return;
+            }
+            T model = result(task);
+            if (model == null) return;
+            try {
+                model.close();
+            } catch (Exception e) {
+                Log.e(TAG, name + " failed to close: " + e.getMessage());
+            }
+        }
+
+        private T result(FutureTask<T> task) {
+            try {
+                return task.get();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        // Build the model here unless it is being built already, then wait for it. Null if it failed.
+        // Never at the same time as close(), which would swap the task under it
+        synchronized T get() {
+            lastUsed = SystemClock.uptimeMillis();
+            FutureTask<T> task = this.task;
+            if (!task.isDone()) {
+                long start = SystemClock.elapsedRealtime();
+                task.run(); // Returns at once if the prefetcher is running it
+                try {
+                    T model = task.get();
+                    Log.d(TAG, name + " requested, ready after "
+                            + (SystemClock.elapsedRealtime() - start) + " ms");
+                    return model;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                } catch (ExecutionException e) {
+                    Log.e(TAG, name + " failed to load: " + e.getCause());
+                    return null;
+                }
+            }
+            return result(task);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.juancavr6.regibot.ml;
+
+import android.os.ParcelFileDescriptor;
+
+import com.google.mediapipe.tasks.core.BaseOptions;
+import com.google.mediapipe.tasks.core.Delegate;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.util.Objects;
+
+/**
+ * How a model runs on the device.
+ * MediaPipe tasks (detectors and classifier) only let us pick the delegate, they choose their own
+ * threads; the thread count and XNNPACK apply to models run with a bare Interpreter (predictor).
+ */
+public class RuntimeOptions {
+
+    public static final int DEFAULT_THREADS = -1; // Let the runtime decide
+
+    public static final RuntimeOptions DEFAULT = new RuntimeOptions(DEFAULT_THREADS, true, Delegate.CPU);
+
+    private final int threads;
+    private final boolean xnnpack;
+    private final Delegate delegate;
+
+    public RuntimeOptions(int threads, boolean xnnpack, Delegate delegate) {
+        this.threads = threads;
+        this.xnnpack = xnnpack;
+        this.delegate = delegate;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean useXnnpack() {
+        return xnnpack;
+    }
+
+    public Delegate getDelegate() {
+        return delegate;
+    }
+
+    public BaseOptions toBaseOptions(String modelName) {
+        return BaseOptions.builder()
+                .setModelAssetPath(modelName)
+                .setDelegate(delegate != null ? delegate : Delegate.CPU)
+                .build();
+    }
+
+    // Options for a model read from a file descriptor, which MediaPipe maps instead of copying
+    public BaseOptions toBaseOptions(ParcelFileDescriptor modelFile) {
+        return BaseOptions.builder()
+                .setModelAssetFileDescriptor(modelFile.getFd())
+                .setDelegate(delegate != null ? delegate : Delegate.CPU)
+                .build();
+    }
+
+    public Interpreter.Options toInterpreterOptions() {
+        return new Interpreter.Options()
+                .setNumThreads(threads)
+                .setUseXNNPACK(xnnpack);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RuntimeOptions)) return false;
+        RuntimeOptions that = (RuntimeOptions) o;
+        return threads == that.threads && xnnpack == that.xnnpack && delegate == that.delegate;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(threads, xnnpack, delegate);
+    }
+
+    @Override
+    public String toString() {
+        return delegate + " threads=" + (threads == DEFAULT_THREADS ? "auto" : threads)
+                + " xnnpack=" + (xnnpack ? "on" : "off");
+    }
+}
@@ -0,0 +1,61 @@
+package com.juancavr6.regibot.ml;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads what the app needs from a .tflite file without building an Interpreter for it.
+ * The file is a FlatBuffer of the TFLite schema: Model.subgraphs (field 2), SubGraph.tensors (0) and
+ * SubGraph.inputs (1), Tensor.shape (0). Only those fields are followed, the rest of the model is not read.
+ */
+final class TfliteModel {
+
+    private static final int IDENTIFIER = 'T' | 'F' << 8 | 'L' << 16 | '3' << 24;
+
+    private static final int MODEL_SUBGRAPHS = 2;
+    private static final int SUBGRAPH_TENSORS = 0;
+    private static final int SUBGRAPH_INPUTS = 1;
+    private static final int TENSOR_SHAPE = 0;
+
+    private TfliteModel() {}
+
+    // Shape of the first input of the main subgraph, such as [1, height, width, channels] for an image model
+    static int[] inputShape(ByteBuffer model) {
+        ByteBuffer buffer = model.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < 8 || buffer.getInt(4) != IDENTIFIER) throw new IllegalArgumentException("Not a TFLite model");
+
+        int root = deref(buffer, 0);
+        int subgraph = table(buffer, vector(buffer, root, MODEL_SUBGRAPHS), 0);
+        int input = buffer.getInt(element(buffer, vector(buffer, subgraph, SUBGRAPH_INPUTS), 0));
+        int tensor = table(buffer, vector(buffer, subgraph, SUBGRAPH_TENSORS), input);
+        int shape = vector(buffer, tensor, TENSOR_SHAPE);
+
+        int[] dimensions = new int[buffer.getInt(shape)];
+        for (int i = 0; i < dimensions.length; i++) dimensions[i] = buffer.getInt(element(buffer, shape, i));
+        return dimensions;
+    }
+
+    // Vector a field of the table points to
+    private static int vector(ByteBuffer buffer, int table, int field) {
+        int vtable = table - buffer.getInt(table);
+        int entry = 4 + 2 * field;
+        int offset = entry < (buffer.getShort(vtable) & 0xFFFF) ? buffer.getShort(vtable + entry) & 0xFFFF : 0;
+        if (offset == 0) throw new IllegalArgumentException("Field " + field + " missing");
+        return deref(buffer, table + offset);
+    }
+
+    // Table at an index of a vector of tables
+    private static int table(ByteBuffer buffer, int vector, int index) {
+        return deref(buffer, element(buffer, vector, index));
+    }
+
+    // Position of a 4 byte element of a vector
+    private static int element(ByteBuffer buffer, int vector, int index) {
+        if (index < 0 || index >= buffer.getInt(vector)) throw new IllegalArgumentException("Index " + index + " out of range");
+        return vector + 4 + 4 * index;
+    }
+
+    private static int deref(ByteBuffer buffer, int position) {
+        return position + buffer.getInt(position);
+    }
+}
@@ -0,0 +1,144 @@
+package com.juancavr6.regibot.ml;
+
+import com.juancavr6.regibot.trace.Latency;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * LRU cache of predicted throws in front of the predictor.
+ * The same species show up at the same zoom again and again, so target boxes repeat: boxes are
+ * normalized to the display and quantized to a grid of grid x grid cells, and a box falling in a cell
+ * seen before gets the cached throw without running (or even loading) the predictor.
+ * On a miss the predictor runs on the exact box and its throw is cached for the cell; the cells are only
+ * the key. A grid of 0 turns the cache off.
+ * The entries can be saved as a Snapshot and restored on the next start; they are only kept for the same grid.
+ */
+public class ThrowCache {
+
+    public static final int CAPACITY = 256;
+
+    private static final int MAX_CELL = 0xFFFF; // Cells are packed in 16 bits per value
+
+    private final int grid;
+    private final LinkedHashMap<Long, float[]> entries = new LinkedHashMap<Long, float[]>(CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, float[]> eldest) {
+            if (size() <= CAPACITY) return false;
+            evictions++;
+            return true;
+        }
+    };
+
+    // Last throw, normalized
+    private float deltaY;
+    private float duration;
+
+    // Stats
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ThrowCache(int grid) {
+        this.grid = Math.max(0, Math.min(MAX_CELL, grid));
+    }
+
+    /**
+     * Throw for a target box in display pixels, read it back with the getters.
+     * Returns false if there is no throw: not cached and the predictor failed to load.
+     */
+    public synchronized boolean predict(Supplier<ModelHandler.Predictor> predictor, float centerX, float centerY,
+                                        float width, float height, int displayWidth, int displayHeight) {
+        long key = 0;
+        if (grid > 0) {
+            key = (long) cell(centerX / displayWidth) << 48 | (long) cell(centerY / displayHeight) << 32
+                    | (long) cell(width / displayWidth) << 16 | cell(height / displayHeight);
+            float[] cached = entries.get(key);
+            if (cached != null) {
+                deltaY = cached[0];
+                duration = cached[1];
+                hits++;
+                return true;
+            }
+        }
+
+        ModelHandler.Predictor model = predictor.get();
+        if (model == null) return false;
+        long start = Latency.start();
+        model.predict(centerX, centerY, width, height, displayWidth, displayHeight);
+        Latency.record(Latency.Stage.PREDICT, start);
+        store(model);
+        if (grid > 0) entries.put(key, new float[]{ deltaY, duration });
+        misses++;
+        return true;
+    }
+
+    private int cell(float normalized) {
+        return Math.max(0, Math.min(MAX_CELL, Math.round(normalized * grid)));
+    }
+
+    private void store(ModelHandler.Predictor model) {
+        deltaY = model.getDeltaY();
+        duration = model.getDuration();
+    }
+
+    public synchronized float getDenormalizedDeltaY(int height) {
+        return deltaY * height;
+    }
+
+    public synchronized float getDenormalizedDuration() {
+        return duration * 1000;
+    }
+
+    // Entries from least to most recently used, so restoring keeps the LRU order
+    public synchronized Snapshot snapshot() {
+        List<Snapshot.Entry> list = new ArrayList<>(entries.size());
+        for (Map.Entry<Long, float[]> entry : entries.entrySet()) {
+            list.add(new Snapshot.Entry(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        return new Snapshot(grid, list);
+    }
+
+    // Ignored if the snapshot was taken with another grid, its cells mean other boxes
+    public synchronized void restore(Snapshot snapshot) {
+        if (snapshot == null || snapshot.entries == null || snapshot.grid != grid || grid == 0) return;
+        for (Snapshot.Entry entry : snapshot.entries) {
+            entries.put(entry.key, new float[]{ entry.deltaY, entry.duration });
+        }
+    }
+
+    public synchronized String report() {
+        long total = hits + misses;
+        return String.format(Locale.US, "ThrowCache grid=%d entries=%d/%d hits=%d misses=%d evictions=%d hitRate=%.2f",
+                grid, entries.size(), CAPACITY, hits, misses, evictions, total > 0 ? (float) hits / total : 0f);
+    }
+
+    /**
+     * Saved cache, stored as JSON in the preferences.
+     */
+    public static class Snapshot {
+        final int grid;
+        final List<Entry> entries;
+
+        Snapshot(int grid, List<Entry> entries) {
+            this.grid = grid;
+            this.entries = entries;
+        }
+
+        static class Entry {
+            final long key;
+            final float deltaY;
+            final float duration;
+
+            Entry(long key, float deltaY, float duration) {
+                this.key = key;
+                this.deltaY = deltaY;
+                this.duration = duration;
+            }
+        }
+    }
+}
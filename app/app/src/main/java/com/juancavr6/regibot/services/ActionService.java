@@ -22,7 +22,6 @@ public class ActionService extends AccessibilityService {
     private final String TAG = "ACTION_SERVICE";
 
     public ActionLooper actionLoop;
-    public Thread actionLoopThread;
 
     //Display metrics
     public int displayWidth;
@@ -58,24 +57,23 @@ public class ActionService extends AccessibilityService {
                 getScreenSize(); // Initialize width, height and dpi
 
                 if(actionLoop == null) actionLoop = new ActionLooper(this);
-                actionLoopThread = new Thread(actionLoop);
-                actionLoopThread.start();
+                actionLoop.start(); // Does nothing if the loop is already started
             }
             else if(action.equals("pause")){ //Put loop thread on pause, not service
                 Log.d(TAG, "onStartCommand(): Action Pause");
-                if(actionLoopThread != null) {
+                if(actionLoop != null) {
                     actionLoop.pause();
                 }
             }
             else if(action.equals("resume")){
                 Log.d(TAG, "onStartCommand(): Action Resume");
-                if(actionLoopThread != null) {
+                if(actionLoop != null) {
                     actionLoop.resume();
                 }
             }
             else if(action.equals("destroy")){
                 Log.d(TAG, "onStartCommand(): Action Destroy");
-                actionLoop.stop();
+                if(actionLoop != null) actionLoop.stop();
             }
         }
         return START_STICKY;
@@ -102,14 +100,24 @@ public class ActionService extends AccessibilityService {
     }
 
     @Override
-    public void onAccessibilityEvent(AccessibilityEvent event) {}
+    public void onAccessibilityEvent(AccessibilityEvent event) {
+        if (actionLoop != null) actionLoop.onAccessibilityEvent(event);
+    }
     @Override
     public void onInterrupt() {}
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        Log.d(TAG, "onTrimMemory(): level " + level);
+        if (actionLoop != null) actionLoop.onTrimMemory(level);
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG,"onDestroy(): stopping self");
+        if(actionLoop != null) actionLoop.stop();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+package com.juancavr6.regibot.services;
+
+import android.app.Activity;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.graphics.Rect;
+import android.media.projection.MediaProjection;
+import android.media.projection.MediaProjectionManager;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.WindowManager;
+
+import com.juancavr6.regibot.R;
+
+/**
+ * Foreground service holding the MediaProjection granted by the user.
+ * Android requires a running mediaProjection foreground service before the projection
+ * can be obtained; the ActionLooper takes it from here to build its frame source.
+ */
+public class ProjectionService extends Service {
+
+    private final String TAG = "PROJECTION_SERVICE";
+
+    public static final String EXTRA_RESULT_CODE = "resultCode";
+    public static final String EXTRA_RESULT_DATA = "resultData";
+
+    private static final String CHANNEL_ID = "regibot_projection";
+    private static final int NOTIFICATION_ID = 2;
+
+    private static volatile ProjectionService instance;
+
+    // Started with a grant that onStartCommand() has not handled yet, guarded by startLock
+    private static final Object startLock = new Object();
+    private static boolean starting;
+
+    private MediaProjection mediaProjection;
+
+    //Full display metrics, the projection mirrors the whole screen
+    private int width;
+    private int height;
+    private int densityDpi;
+
+    public static ProjectionService getInstance() {
+        return instance;
+    }
+
+    // Start the service with the screen recording consent, awaitStarted() then waits for it to take the projection
+    public static void start(Context context, int resultCode, Intent resultData) {
+        synchronized (startLock) {
+            starting = true;
+        }
+        Intent intent = new Intent(context, ProjectionService.class);
+        intent.putExtra(EXTRA_RESULT_CODE, resultCode);
+        intent.putExtra(EXTRA_RESULT_DATA, resultData);
+        context.startForegroundService(intent);
+    }
+
+    /**
+     * Wait up to timeoutMs for a start() in progress to take the projection, or to fail.
+     * Returns false if it is still starting.
+     */
+    public static boolean awaitStarted(long timeoutMs) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        synchronized (startLock) {
+            long remaining;
+            while (starting && (remaining = deadline - SystemClock.uptimeMillis()) > 0) {
+                startLock.wait(remaining);
+            }
+            return !starting;
+        }
+    }
+
+    private static void started() {
+        synchronized (startLock) {
+            starting = false;
+            startLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        instance = this;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent == null) {
+            started();
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        // Must be in the foreground before asking for the projection
+        startForeground(NOTIFICATION_ID, buildNotification(), ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PROJECTION);
+
+        int resultCode = intent.getIntExtra(EXTRA_RESULT_CODE, Activity.RESULT_CANCELED);
+        Intent resultData = intent.getParcelableExtra(EXTRA_RESULT_DATA);
+        MediaProjectionManager manager = getSystemService(MediaProjectionManager.class);
+        MediaProjection projection = resultData != null ? manager.getMediaProjection(resultCode, resultData) : null;
+        if (projection == null) {
+            Log.e(TAG, "onStartCommand(): projection not granted");
+            started();
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        readDisplayMetrics();
+        projection.registerCallback(new MediaProjection.Callback() {
+            @Override
+            public void onStop() {
+                Log.d(TAG, "onStop(): projection stopped");
+                stopSelf();
+            }
+        }, new Handler(getMainLooper()));
+
+        synchronized (this) {
+            if (mediaProjection != null) mediaProjection.stop();
+            mediaProjection = projection;
+        }
+        started();
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Hand the projection over to the caller, it can only create one display so it is given once.
+     * Returns null if there is no projection to give.
+     */
+    public synchronized MediaProjection takeMediaProjection() {
+        MediaProjection projection = mediaProjection;
+        mediaProjection = null;
+        return projection;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDensityDpi() {
+        return densityDpi;
+    }
+
+    private void readDisplayMetrics() {
+        Rect bounds = getSystemService(WindowManager.class).getMaximumWindowMetrics().getBounds();
+        width = bounds.width();
+        height = bounds.height();
+        densityDpi = getResources().getDisplayMetrics().densityDpi;
+    }
+
+    private Notification buildNotification() {
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                getString(R.string.notification_channel_projection), NotificationManager.IMPORTANCE_LOW);
+        getSystemService(NotificationManager.class).createNotificationChannel(channel);
+
+        return new Notification.Builder(this, CHANNEL_ID)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(getString(R.string.notification_projection))
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setOngoing(true)
+                .build();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onDestroy() {
+        synchronized (this) {
+            if (mediaProjection != null) mediaProjection.stop();
+            mediaProjection = null;
+        }
+        instance = null;
+        started();
+        super.onDestroy();
+        Log.d(TAG, "onDestroy(): stopping self");
+    }
+}
@@ -0,0 +1,86 @@
+package com.juancavr6.regibot.trace;
+
+import java.util.Locale;
+
+/**
+ * Where the time of a loop cycle goes: one LatencyHistogram per Stage, recorded wherever the stage runs.
+ * Stages are timed with start() and record(stage, start); always on, a record is a few atomic adds.
+ * The loop resets the histograms when it starts and logs the report when it pauses or stops.
+ * While the Timeline records, every stage recorded is also a span on it.
+ */
+public final class Latency {
+
+    /**
+     * Timed parts of a cycle. Cross-thread stages start on one thread and are recorded on another.
+     */
+    public enum Stage {
+        SLEEP(false),            // Pause between cycles
+        CAPTURE(true),           // Screenshot request to frame delivered
+        CONVERT(false),          // Rendering a frame level into a model input
+        CLASSIFY(false),
+        DETECT_MAP(false),
+        DETECT_ENCOUNTER(false),
+        DETECT_CLICKABLE(false),
+        DETECT_ASYNC(true),      // Pipelined map detection, submit to result
+        PREDICT(false),
+        GESTURE(true);           // Gesture dispatch to completed or cancelled
+
+        final String label = name().toLowerCase(Locale.US);
+        final boolean crossThread;
+
+        Stage(boolean crossThread) {
+            this.crossThread = crossThread;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+    static {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    }
+
+    private Latency() {}
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    // Record the time since start, returns it
+    public static long record(Stage stage, long start) {
+        long nanos = System.nanoTime() - start;
+        histograms[stage.ordinal()].record(nanos);
+        if (Timeline.isEnabled()) {
+            if (stage.crossThread) Timeline.asyncSpan(stage.label, start);
+            else Timeline.span(stage.label, start);
+        }
+        return nanos;
+    }
+
+    public static LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    // Milliseconds at or below which the fraction (0 to 1) of the stage runs finished
+    public static float percentileMs(Stage stage, double fraction) {
+        return histograms[stage.ordinal()].percentile(fraction) / 1e6f;
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms) histogram.reset();
+    }
+
+    // Count and percentiles of every stage that ran, in milliseconds
+    public static String report() {
+        StringBuilder builder = new StringBuilder("Latency");
+        for (Stage stage : STAGES) {
+            LatencyHistogram histogram = histograms[stage.ordinal()];
+            if (histogram.getCount() == 0) continue;
+            builder.append(String.format(Locale.US, "\n  %-16s n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+                    stage.label, histogram.getCount(), histogram.getMean() / 1e6f,
+                    histogram.percentile(0.5) / 1e6f, histogram.percentile(0.9) / 1e6f,
+                    histogram.percentile(0.99) / 1e6f, histogram.getMax() / 1e6f));
+        }
+        return builder.toString();
+    }
+}
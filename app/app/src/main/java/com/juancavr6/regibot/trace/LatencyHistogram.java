@@ -0,0 +1,84 @@
+package com.juancavr6.regibot.trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with log-scaled buckets and a fixed size.
+ * Every power of two is split in SUB_BUCKETS linear buckets, so a percentile is within 1/SUB_BUCKETS
+ * of the real value from 1 ns up to MAX_VALUE (over an hour); longer durations count as MAX_VALUE.
+ * Recording is lock-free and can happen on any thread. A reset while recording may lose those records.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 41;
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(MAX_VALUE, nanos));
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long previous = max.get();
+        while (value > previous && !max.compareAndSet(previous, value)) previous = max.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Highest value counted in the bucket
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * Duration in nanoseconds at or below which the given fraction (0 to 1) of the records fall,
+     * rounded up to its bucket and never above the max recorded. 0 if nothing was recorded.
+     */
+    public long percentile(double fraction) {
+        long recorded = count.get();
+        if (recorded == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * recorded));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) return Math.min(upperBoundOf(bucket), max.get());
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long recorded = count.get();
+        return recorded > 0 ? total.get() / recorded : 0;
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) counts.set(bucket, 0);
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,218 @@
+package com.juancavr6.regibot.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Spans of the loop cycles on a timeline, exported as Chrome trace-event JSON (chrome://tracing, Perfetto).
+ * The loop marks each cycle with beginCycle(), which numbers it; every span is then given the id of the
+ * cycle it started in.
+ * Spans are recorded with the System.nanoTime() start of Latency.start(): spans on one thread are written
+ * as complete events on that thread, spans that end on another thread (a capture or gesture callback)
+ * as async events of their cycle.
+ * Only records between start() and stop(), into a ring of fixed size keeping the newest spans.
+ * Plain Java, so the export works the same off the device.
+ */
+public final class Timeline {
+
+    public static final int DEFAULT_CAPACITY = 16384;
+    private static final String CYCLE = "cycle";
+
+    private static volatile boolean enabled;
+
+    // Ring of spans, guarded by the class
+    private static String[] names = new String[0];
+    private static long[] starts = new long[0];
+    private static long[] ends = new long[0];
+    private static long[] threads = new long[0];  // Thread the span ended on
+    private static long[] cycleIds = new long[0]; // Id of the cycle for cycle spans
+    private static boolean[] async = new boolean[0];
+    private static long count;                     // Spans recorded, the newest capacity are kept
+    private static final Map<Long, String> threadNames = new HashMap<>();
+
+    private static long cycleStart = -1;           // Start of the cycle running, -1 if none
+    private static long cycleId;                   // Id of the cycle running, counted since start()
+
+    private Timeline() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Start recording, dropping what was recorded before
+    public static synchronized void start(int capacity) {
+        names = new String[capacity];
+        starts = new long[capacity];
+        ends = new long[capacity];
+        threads = new long[capacity];
+        cycleIds = new long[capacity];
+        async = new boolean[capacity];
+        count = 0;
+        threadNames.clear();
+        cycleStart = -1;
+        cycleId = 0;
+        enabled = true;
+    }
+
+    // Stop recording, the spans stay available for export
+    public static synchronized void stop() {
+        endCycle();
+        enabled = false;
+    }
+
+    // End the running cycle, if any, and start the next one. Returns its id, -1 when not recording
+    public static long beginCycle() {
+        if (!enabled) return -1;
+        synchronized (Timeline.class) {
+            endCycle();
+            cycleStart = System.nanoTime();
+            return ++cycleId;
+        }
+    }
+
+    private static void endCycle() {
+        if (cycleStart < 0) return;
+        add(CYCLE, cycleStart, System.nanoTime(), false);
+        cycleIds[(int) ((count - 1) % names.length)] = cycleId;
+        cycleStart = -1;
+    }
+
+    // A span from start (Latency.start()) to now on this thread
+    public static void span(String name, long start) {
+        if (!enabled) return;
+        long end = System.nanoTime();
+        synchronized (Timeline.class) {
+            add(name, start, end, false);
+        }
+    }
+
+    // A span from start to now that began on another thread
+    public static void asyncSpan(String name, long start) {
+        if (!enabled) return;
+        long end = System.nanoTime();
+        synchronized (Timeline.class) {
+            add(name, start, end, true);
+        }
+    }
+
+    // The runnable recorded as a span when it runs, for work posted to another thread
+    public static Runnable wrap(final String name, final Runnable runnable) {
+        if (!enabled) return runnable;
+        return new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                runnable.run();
+                span(name, start);
+            }
+        };
+    }
+
+    private static void add(String name, long start, long end, boolean isAsync) {
+        if (names.length == 0) return;
+        int slot = (int) (count++ % names.length);
+        Thread thread = Thread.currentThread();
+        names[slot] = name;
+        starts[slot] = start;
+        ends[slot] = end;
+        threads[slot] = thread.getId();
+        async[slot] = isAsync;
+        if (!threadNames.containsKey(thread.getId())) threadNames.put(thread.getId(), thread.getName());
+    }
+
+    public static synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Write the recorded spans as a Chrome trace-event JSON object. Times are in microseconds from the
+     * oldest span kept; spans started before the oldest cycle kept have cycle -1.
+     */
+    public static synchronized void export(Writer writer) throws IOException {
+        int size = (int) Math.min(count, names.length);
+        int first = size > 0 ? (int) ((count - size) % names.length) : 0;
+
+        long origin = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) origin = Math.min(origin, starts[(first + i) % names.length]);
+
+        // Cycles in the order they started (they do not overlap), spans belong to the last cycle started before them
+        long[] cycleStarts = new long[size + 1];
+        long[] ids = new long[size + 1];
+        int cycles = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = (first + i) % names.length;
+            if (CYCLE.equals(names[slot])) {
+                cycleStarts[cycles] = starts[slot];
+                ids[cycles++] = cycleIds[slot];
+            }
+        }
+        if (cycleStart >= 0) { // Still running, not a span yet
+            cycleStarts[cycles] = cycleStart;
+            ids[cycles++] = cycleId;
+        }
+
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean comma = false;
+        for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+            if (comma) writer.write(',');
+            writer.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey()
+                    + ",\"args\":{\"name\":\"" + escape(thread.getValue()) + "\"}}");
+            comma = true;
+        }
+        for (int i = 0; i < size; i++) {
+            int slot = (first + i) % names.length;
+            int cycleIndex = cycleOf(cycleStarts, cycles, starts[slot]);
+            long cycle = cycleIndex >= 0 ? ids[cycleIndex] : -1;
+            String ts = micros(starts[slot] - origin);
+            String common = "\"name\":\"" + escape(names[slot]) + "\",\"cat\":\"loop\",\"pid\":1,\"tid\":" + threads[slot];
+            if (comma) writer.write(',');
+            comma = true;
+            if (async[slot]) {
+                // Async pairs are matched by id, the span index keeps overlapping ones apart
+                String id = ",\"id\":" + (count - size + i) + ",\"args\":{\"cycle\":" + cycle + "}";
+                writer.write("\n{" + common + ",\"ph\":\"b\",\"ts\":" + ts + id + "},");
+                writer.write("\n{" + common + ",\"ph\":\"e\",\"ts\":" + micros(ends[slot] - origin) + id + "}");
+            } else {
+                writer.write("\n{" + common + ",\"ph\":\"X\",\"ts\":" + ts
+                        + ",\"dur\":" + micros(ends[slot] - starts[slot]) + ",\"args\":{\"cycle\":" + cycle + "}}");
+            }
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    // Index of the last cycle started at or before the time, -1 if none
+    private static int cycleOf(long[] cycleStarts, int cycles, long time) {
+        int low = 0;
+        int high = cycles - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (cycleStarts[middle] <= time) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1000.0);
+    }
+
+    private static String escape(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') builder.append('\\').append(c);
+            else if (c < 0x20) builder.append(String.format(Locale.US, "\\u%04x", (int) c));
+            else builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package com.juancavr6.regibot.trace;
+
+import com.juancavr6.regibot.ml.LabelMap;
+
+/**
+ * The events the loop traces. An event is recorded as its id plus up to four primitive fields,
+ * the names and kinds of the fields are only looked at when the flusher formats it.
+ * Fields are declared as "name:kind": i for an integer, f for a float passed as Tracer.bits(value)
+ * and c for a LabelMap class id, printed as its name.
+ */
+public enum TraceEvent {
+
+    // Capture
+    CAPTURE_DONE("frameId:i"),
+    CAPTURE_FAILED("errorCode:i"),
+    CAPTURE_RETRY("errorCode:i", "delayMs:i"),
+    PREFETCH_FAILED("errorCode:i"),
+    CAPTURE_TRIGGERED("cause:i"), // CaptureTrigger.Cause ordinal
+
+    // Screens
+    CLASSIFIED("frameId:i", "screen:c", "score:f"),
+    MAP_SCANNED("frameId:i", "detections:i", "best:c", "score:f"),
+    TARGET_CHOSEN("target:c", "position:i", "targets:i"),
+    ENCOUNTER_SCANNED("frameId:i", "detections:i", "boundingBox:i", "dynamicBox:i"),
+    POKEBALL_SCANNED("frameId:i", "detections:i", "pokeball:i"),
+    POKEBALL_COORDS("source:i", "x:f", "y:f"),
+    CLICKABLE_SCANNED("frameId:i", "detections:i", "clickable:i", "passenger:i"),
+
+    // Actions
+    TAP("x:i", "y:i"),
+    THROW("deltaY:f", "durationMs:i", "fast:i"),
+    GESTURE_CANCELLED("gesture:i"),
+    WAIT_TIMEOUT("wait:i", "timeoutMs:i");
+
+    // POKEBALL_COORDS sources
+    public static final int COORDS_FIXED = 0;
+    public static final int COORDS_DETECTED = 1;
+    public static final int COORDS_FALLBACK = 2;
+    public static final int COORDS_SAVED = 3;
+
+    // GESTURE_CANCELLED gestures
+    public static final int GESTURE_HOLD = 0;
+    public static final int GESTURE_FAST_THROW = 1;
+
+    // WAIT_TIMEOUT waits
+    public static final int WAIT_CAPTURE = 0;
+    public static final int WAIT_GESTURE = 1;
+
+    static final int MAX_FIELDS = 4;
+
+    private final String name;
+    private final String[] fieldNames;
+    private final char[] fieldKinds;
+
+    TraceEvent(String... fields) {
+        this.name = name().toLowerCase();
+        this.fieldNames = new String[fields.length];
+        this.fieldKinds = new char[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            int colon = fields[i].indexOf(':');
+            fieldNames[i] = fields[i].substring(0, colon);
+            fieldKinds[i] = fields[i].charAt(colon + 1);
+        }
+    }
+
+    // Appends "name field=value ..." for the recorded fields
+    void format(StringBuilder builder, long[] fields) {
+        builder.append(name);
+        for (int i = 0; i < fieldNames.length; i++) {
+            builder.append(' ').append(fieldNames[i]).append('=');
+            switch (fieldKinds[i]) {
+                case 'f':
+                    builder.append(Float.intBitsToFloat((int) fields[i]));
+                    break;
+                case 'c':
+                    String className = LabelMap.nameOf((int) fields[i]);
+                    builder.append(className != null ? className : "none");
+                    break;
+                default:
+                    builder.append(fields[i]);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.juancavr6.regibot.trace;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured tracing for the hot path, in place of building log strings on every frame.
+ * An event is its TraceEvent id plus up to four primitive fields, written to a preallocated ring
+ * without locks or allocation; a background thread formats the events and writes them to logcat or a file.
+ * Levels are the android.util.Log ones. Events below COMPILED_LEVEL are dropped by a constant check
+ * the compiler removes, events below the runtime level cost a volatile read. Arguments are still
+ * evaluated at the call site, so events whose fields take work to compute are guarded with isEnabled.
+ * When the ring is full the oldest events are overwritten, the flusher counts them as lost.
+ */
+public final class Tracer {
+
+    private static final String TAG = "Trace";
+
+    // Raise to Log.ASSERT to compile every event out
+    public static final int COMPILED_LEVEL = Log.VERBOSE;
+    public static final int OFF = Integer.MAX_VALUE;
+
+    private static final int CAPACITY = 4096; // Events, a power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final int SLOT = 2 + TraceEvent.MAX_FIELDS; // Time, header, fields
+    private static final long FLUSH_INTERVAL_MS = 500;
+    private static final TraceEvent[] EVENTS = TraceEvent.values();
+
+    private static volatile int level = OFF;
+
+    // Ring: a slot holds -1 in sequence while it is written, then the index of the event written in it
+    private static final AtomicLong head = new AtomicLong();
+    private static final AtomicLongArray sequence = new AtomicLongArray(CAPACITY);
+    private static final AtomicLongArray data = new AtomicLongArray(CAPACITY * SLOT);
+
+    private static Flusher flusher; // Guarded by the class
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) sequence.set(i, -1);
+    }
+
+    private Tracer() {}
+
+    public static boolean isEnabled(int eventLevel) {
+        return eventLevel >= COMPILED_LEVEL && eventLevel >= level;
+    }
+
+    public static void event(int eventLevel, TraceEvent event) {
+        if (eventLevel < COMPILED_LEVEL || eventLevel < level) return;
+        write(eventLevel, event, 0, 0, 0, 0);
+    }
+
+    public static void event(int eventLevel, TraceEvent event, long a) {
+        if (eventLevel < COMPILED_LEVEL || eventLevel < level) return;
+        write(eventLevel, event, a, 0, 0, 0);
+    }
+
+    public static void event(int eventLevel, TraceEvent event, long a, long b) {
+        if (eventLevel < COMPILED_LEVEL || eventLevel < level) return;
+        write(eventLevel, event, a, b, 0, 0);
+    }
+
+    public static void event(int eventLevel, TraceEvent event, long a, long b, long c) {
+        if (eventLevel < COMPILED_LEVEL || eventLevel < level) return;
+        write(eventLevel, event, a, b, c, 0);
+    }
+
+    public static void event(int eventLevel, TraceEvent event, long a, long b, long c, long d) {
+        if (eventLevel < COMPILED_LEVEL || eventLevel < level) return;
+        write(eventLevel, event, a, b, c, d);
+    }
+
+    // A float field, for the fields declared with kind f
+    public static long bits(float value) {
+        return Float.floatToRawIntBits(value);
+    }
+
+    private static void write(int eventLevel, TraceEvent event, long a, long b, long c, long d) {
+        long index = head.getAndIncrement();
+        int slot = (int) (index & MASK);
+        int base = slot * SLOT;
+        sequence.set(slot, -1);
+        data.lazySet(base, SystemClock.elapsedRealtimeNanos());
+        data.lazySet(base + 1, Thread.currentThread().getId() << 32 | (long) eventLevel << 16 | event.ordinal());
+        data.lazySet(base + 2, a);
+        data.lazySet(base + 3, b);
+        data.lazySet(base + 4, c);
+        data.lazySet(base + 5, d);
+        sequence.set(slot, index);
+    }
+
+    // Log level for a trace level setting, OFF for unknown values
+    public static int parseLevel(String value) {
+        if (value == null) return OFF;
+        switch (value) {
+            case "error":
+                return Log.ERROR;
+            case "info":
+                return Log.INFO;
+            case "debug":
+                return Log.DEBUG;
+            case "verbose":
+                return Log.VERBOSE;
+            default:
+                return OFF;
+        }
+    }
+
+    /**
+     * Start recording events of at least the given level, flushed to the file if not null, to logcat otherwise.
+     * Replaces the previous session, whose pending events are flushed first.
+     */
+    public static synchronized void start(int minLevel, File file) {
+        stop();
+        if (minLevel == OFF) return;
+        Writer writer = null;
+        if (file != null) {
+            try {
+                writer = new BufferedWriter(new FileWriter(file, true));
+            } catch (IOException e) {
+                Log.e(TAG, "start(): cannot write " + file + ", using logcat");
+            }
+        }
+        // Skip whatever was left in the ring by a previous session
+        flusher = new Flusher(writer, head.get());
+        flusher.start();
+        level = minLevel;
+    }
+
+    public static synchronized void setLevel(int minLevel) {
+        if (flusher != null) level = minLevel;
+    }
+
+    // Stop recording and write what is left
+    public static synchronized void stop() {
+        level = OFF;
+        if (flusher == null) return;
+        flusher.finish();
+        flusher = null;
+    }
+
+    /**
+     * Drains the ring every FLUSH_INTERVAL_MS, formatting on its own thread.
+     */
+    private static class Flusher extends Thread {
+
+        private final Writer writer;
+        private final StringBuilder line = new StringBuilder(128);
+        private final long[] fields = new long[TraceEvent.MAX_FIELDS];
+        private long tail;
+        private long lost;
+        private volatile boolean running = true;
+
+        Flusher(Writer writer, long tail) {
+            super("Tracer");
+            setDaemon(true);
+            this.writer = writer;
+            this.tail = tail;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                LockSupport.parkNanos(FLUSH_INTERVAL_MS * 1_000_000);
+                drain();
+            }
+            drain();
+            if (lost > 0) output(Log.WARN, "lost " + lost + " events, the ring was full");
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "close(): " + e.getMessage());
+                }
+            }
+        }
+
+        void finish() {
+            running = false;
+            LockSupport.unpark(this);
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void drain() {
+            long end = head.get();
+            if (end - tail > CAPACITY) {
+                lost += end - CAPACITY - tail;
+                tail = end - CAPACITY;
+            }
+            while (tail < end) {
+                int slot = (int) (tail & MASK);
+                long written = sequence.get(slot);
+                if (written == -1 || written < tail) break; // Still being written, next drain
+                if (written > tail) { // Overwritten before it was read
+                    lost++;
+                    tail++;
+                    continue;
+                }
+                int base = slot * SLOT;
+                long time = data.get(base);
+                long header = data.get(base + 1);
+                for (int i = 0; i < fields.length; i++) fields[i] = data.get(base + 2 + i);
+                if (sequence.get(slot) != tail) { // Overwritten while read
+                    lost++;
+                    tail++;
+                    continue;
+                }
+                tail++;
+
+                int eventLevel = (int) (header >>> 16) & 0xFFFF;
+                line.setLength(0);
+                line.append(time / 1000).append("us t").append(header >>> 32).append(' ');
+                EVENTS[(int) header & 0xFFFF].format(line, fields);
+                output(eventLevel, line);
+            }
+            if (writer != null) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    Log.e(TAG, "flush(): " + e.getMessage());
+                }
+            }
+        }
+
+        private void output(int eventLevel, CharSequence text) {
+            if (writer == null) {
+                Log.println(eventLevel, TAG, text.toString());
+                return;
+            }
+            try {
+                writer.append(text).append('\n');
+            } catch (IOException e) {
+                Log.e(TAG, "write(): " + e.getMessage());
+            }
+        }
+    }
+}
@@ -8,8 +8,8 @@ import android.os.Looper;
 import android.view.Gravity;
 import android.view.WindowManager;
 
-import com.google.mediapipe.tasks.components.containers.Detection;
-import com.juancavr6.regibot.ml.ModelHandler;
+import com.juancavr6.regibot.ml.Classification;
+import com.juancavr6.regibot.ml.Detections;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -129,11 +129,11 @@ public class DebugOverlayManager {
     /**
      * Update the classifier result display.
      */
-    public void updateClassifier(ModelHandler.Classifier classifier) {
-        if (!isEnabled || !isShowing || debugOverlayView == null || classifier == null) return;
+    public void updateClassifier(Classification classification) {
+        if (!isEnabled || !isShowing || debugOverlayView == null || classification == null) return;
 
-        String className = classifier.getClassName(0);
-        float score = classifier.getScore(0);
+        String className = classification.getClassName(0);
+        float score = classification.getScore(0);
 
         mainHandler.post(() -> debugOverlayView.setClassifierResult(className, score));
     }
@@ -141,55 +141,45 @@ public class DebugOverlayManager {
     /**
      * Update detections from the map detector model.
      */
-    public void updateMapDetector(ModelHandler.Detector detector) {
-        updateDetector(detector, DebugOverlayView.MODEL_MAP);
+    public void updateMapDetector(Detections detections) {
+        updateDetector(detections, DebugOverlayView.MODEL_MAP);
     }
 
     /**
      * Update detections from the encounter detector model.
      */
-    public void updateEncounterDetector(ModelHandler.Detector detector) {
-        updateDetector(detector, DebugOverlayView.MODEL_ENCOUNTER);
+    public void updateEncounterDetector(Detections detections) {
+        updateDetector(detections, DebugOverlayView.MODEL_ENCOUNTER);
     }
 
     /**
      * Update detections from the clickable detector model.
      */
-    public void updateClickableDetector(ModelHandler.Detector detector) {
-        updateDetector(detector, DebugOverlayView.MODEL_CLICKABLE);
+    public void updateClickableDetector(Detections detections) {
+        updateDetector(detections, DebugOverlayView.MODEL_CLICKABLE);
     }
 
     /**
      * Update detections from a detector model with the specified model type.
+     * The detections are immutable, so they are converted on the main thread while the loop goes on.
      */
-    private void updateDetector(ModelHandler.Detector detector, String modelType) {
-        if (!isEnabled || !isShowing || debugOverlayView == null || detector == null) return;
-
-        List<Detection> detections = detector.getDetectionList();
-        if (detections == null || detections.isEmpty()) {
-            // Clear detections for this model
-            mainHandler.post(() -> debugOverlayView.setDetectionsForModel(
-                    modelType, new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
-            return;
-        }
-
-        List<RectF> boxes = new ArrayList<>();
-        List<String> classNames = new ArrayList<>();
-        List<Float> confidences = new ArrayList<>();
-
-        for (int i = 0; i < detections.size(); i++) {
-            RectF box = detector.getBoundingBox(i);
-            String className = detector.getClassName(i);
-            float score = detector.getScore(i);
+    private void updateDetector(Detections detections, String modelType) {
+        if (!isEnabled || !isShowing || debugOverlayView == null) return;
 
-            if (box != null && className != null) {
-                boxes.add(box);
-                classNames.add(className);
-                confidences.add(score);
+        mainHandler.post(() -> {
+            List<RectF> boxes = new ArrayList<>();
+            List<String> classNames = new ArrayList<>();
+            List<Float> confidences = new ArrayList<>();
+
+            // No detections clears the ones of this model
+            int size = detections != null ? detections.size() : 0;
+            for (int i = 0; i < size; i++) {
+                boxes.add(detections.getBoundingBox(i));
+                classNames.add(detections.getClassName(i));
+                confidences.add(detections.getScore(i));
             }
-        }
-
-        mainHandler.post(() -> debugOverlayView.setDetectionsForModel(modelType, boxes, classNames, confidences));
+            debugOverlayView.setDetectionsForModel(modelType, boxes, classNames, confidences);
+        });
     }
 
     /**
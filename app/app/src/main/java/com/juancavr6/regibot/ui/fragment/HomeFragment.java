@@ -3,11 +3,13 @@ package com.juancavr6.regibot.ui.fragment;
 import static com.juancavr6.regibot.PermissionActivity.isAccessibilityServiceEnabled;
 
 
+import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.graphics.Color;
+import android.media.projection.MediaProjectionManager;
 import android.net.Uri;
 import android.os.Bundle;
 
@@ -33,8 +35,10 @@ import android.widget.Toast;
 import com.google.android.material.card.MaterialCardView;
 import com.juancavr6.regibot.R;
 import com.juancavr6.regibot.controller.SettingsController;
+import com.juancavr6.regibot.controller.SettingsValuesProvider;
 import com.juancavr6.regibot.services.ActionService;
 import com.juancavr6.regibot.services.FloatingMenuService;
+import com.juancavr6.regibot.services.ProjectionService;
 import com.juancavr6.regibot.ui.adapter.RecyclerAdapterMenuPriority;
 import com.juancavr6.regibot.ui.decorator.ListSeparatorDecoration;
 import com.juancavr6.regibot.utils.DialogHelper;
@@ -90,6 +94,19 @@ public class HomeFragment extends Fragment implements FloatingMenuService.Callba
                 }
             });
 
+    //Launcher for the screen recording consent, the bot starts whatever the answer
+    private final ActivityResultLauncher<Intent> projectionIntent = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(),
+            result -> {
+                if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null) {
+                    // The loop waits for the service to take the projection while loading
+                    ProjectionService.start(context, result.getResultCode(), result.getData());
+                } else {
+                    Toast.makeText(context, getString(R.string.displayText_projection_denied), Toast.LENGTH_SHORT).show();
+                }
+                startBot();
+            });
+
     //Service Connection for FloatMenuService callbacks
     private final ServiceConnection mConnection = new ServiceConnection() {
 
@@ -183,17 +200,13 @@ public class HomeFragment extends Fragment implements FloatingMenuService.Callba
                     if(isRunning){
                         updateClient(false);
                     }
+                    else if(SettingsValuesProvider.CAPTURE_SOURCE_PROJECTION.equals(
+                            SettingsValuesProvider.getInstance(context).getCaptureSource())){
+                        MediaProjectionManager projectionManager = context.getSystemService(MediaProjectionManager.class);
+                        projectionIntent.launch(projectionManager.createScreenCaptureIntent());
+                    }
                     else{
-                        context.bindService(floatMenuServiceIntent,mConnection,Context.BIND_AUTO_CREATE);
-                        context.startService(floatMenuServiceIntent);
-
-                        actionServiceIntent.putExtra("action","play");
-                        context.startService(actionServiceIntent);
-
-                        launchPokemonGoApp();
-                        isRunning = true;
-                        mainButton.setClickable(false);
-                        updateMainButton();
+                        startBot();
                     }
 
                 }
@@ -224,6 +237,19 @@ public class HomeFragment extends Fragment implements FloatingMenuService.Callba
     }
 
 
+    private void startBot() {
+        context.bindService(floatMenuServiceIntent,mConnection,Context.BIND_AUTO_CREATE);
+        context.startService(floatMenuServiceIntent);
+
+        actionServiceIntent.putExtra("action","play");
+        context.startService(actionServiceIntent);
+
+        launchPokemonGoApp();
+        isRunning = true;
+        mainButton.setClickable(false);
+        updateMainButton();
+    }
+
     private void loadViews() {
 
         adapter_priority = new RecyclerAdapterMenuPriority(context);
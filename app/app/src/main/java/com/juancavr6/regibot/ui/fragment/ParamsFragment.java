@@ -3,6 +3,7 @@ package com.juancavr6.regibot.ui.fragment;
 import static com.juancavr6.regibot.controller.SettingsValuesProvider.CATEGORY_GENERAL;
 import static com.juancavr6.regibot.controller.SettingsValuesProvider.CATEGORY_THRESHOLD;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.text.InputType;
 import android.text.method.DigitsKeyListener;
@@ -15,7 +16,14 @@ import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceGroup;
 
 import com.juancavr6.regibot.R;
+import com.juancavr6.regibot.controller.SettingsController;
 import com.juancavr6.regibot.controller.SettingsValuesProvider;
+import com.juancavr6.regibot.ml.ModelBenchmark;
+import com.juancavr6.regibot.ml.RuntimeOptions;
+import com.juancavr6.regibot.utils.DialogHelper;
+
+import java.util.List;
+import java.util.Map;
 
 
 public class ParamsFragment extends PreferenceFragmentCompat {
@@ -36,6 +44,11 @@ public class ParamsFragment extends PreferenceFragmentCompat {
             Toast.makeText(getContext(), getString(R.string.displayText_reset), Toast.LENGTH_SHORT).show();
             return true;
         });
+        Preference benchmarkPref = findPreference("model_benchmark");
+        benchmarkPref.setOnPreferenceClickListener(preference -> {
+            runModelBenchmark(benchmarkPref);
+            return true;
+        });
         resetTPref.setOnPreferenceClickListener(preference -> {
             SettingsValuesProvider.getInstance(getContext()).loadOnPreferences(getContext(),CATEGORY_THRESHOLD);
 
@@ -48,6 +61,27 @@ public class ParamsFragment extends PreferenceFragmentCompat {
 
     }
 
+    // Time every model off the main thread and offer to keep the fastest options
+    private void runModelBenchmark(Preference benchmarkPref) {
+        Context context = requireContext();
+        benchmarkPref.setEnabled(false);
+        Toast.makeText(context, getString(R.string.displayText_benchmark_running), Toast.LENGTH_LONG).show();
+
+        new Thread(() -> {
+            List<ModelBenchmark.Result> results = new ModelBenchmark(context).run();
+            Map<String, RuntimeOptions> best = ModelBenchmark.best(results);
+            if (getActivity() == null) return;
+            getActivity().runOnUiThread(() -> {
+                benchmarkPref.setEnabled(true);
+                if (!isAdded()) return;
+                DialogHelper.benchmarkResults(context, ModelBenchmark.format(results), () -> {
+                    SettingsController.getInstance(context).setRuntimeOptions(best);
+                    Toast.makeText(context, getString(R.string.displayText_runtime_applied), Toast.LENGTH_SHORT).show();
+                });
+            });
+        }, "ModelBenchmark").start();
+    }
+
     // Method to apply rules to EditTextPreferences
     private void applyEditTextRules(PreferenceGroup group) {
         for (int i = 0; i < group.getPreferenceCount(); i++) {
@@ -68,6 +102,26 @@ public class ParamsFragment extends PreferenceFragmentCompat {
                     maxValue = 20;
                     minValue = 1;
                 }
+                else if (getString(R.string.preferences_key_replay_rate).equals(pref.getKey())){
+                    stringSymbol = " fps";
+                    maxValue = 60;
+                    minValue = 1;
+                }
+                else if (getString(R.string.preferences_key_throw_cache_grid).equals(pref.getKey())){
+                    stringSymbol = " cells";
+                    maxValue = 1000;
+                    minValue = 0;
+                }
+                else if (getString(R.string.preferences_key_model_memory_budget).equals(pref.getKey())){
+                    stringSymbol = " MB";
+                    maxValue = 2048;
+                    minValue = 0;
+                }
+                else if (getString(R.string.preferences_key_max_capture_interval).equals(pref.getKey())){
+                    stringSymbol = " ms";
+                    maxValue = 60000;
+                    minValue = 1000;
+                }
                 else if (getString(R.string.preferences_key_cycle_interval).equals(pref.getKey())){
                     stringSymbol = " ms";
                     maxValue = 2000;
@@ -13,16 +13,18 @@ public class CustomUtils {
 
     // Checks if a point (x, y) is within a valid section for a Pokeball
     public static boolean isValidSectionForPokeball(float x , float y , int displayWidth, int displayHeight) {
+        return getPokeballSection(displayWidth, displayHeight).contains((int) x, (int) y);
+    }
+
+    // Bottom band where the Pokeball can be, also used as the region of interest to detect it
+    public static Rect getPokeballSection(int displayWidth, int displayHeight) {
         int invalidSection = 200;
 
         int limitLeft = displayWidth / 4;
         int limitRight = displayWidth * 3 / 4;
         int limitTop = displayHeight - invalidSection;
 
-        Rect validSection = new Rect(limitLeft, limitTop, limitRight, displayHeight);
-
-
-        return validSection.contains((int) x, (int) y);
+        return new Rect(limitLeft, limitTop, limitRight, displayHeight);
     }
 
     // Checks if a point (x, y) is within a valid section for a tap
@@ -36,6 +38,18 @@ public class CustomUtils {
         return !validSection.contains((int) x, (int) y);
     }
 
+    // Section where taps are accepted, used as the region of interest for tap targets
+    public static Rect getTapSection(int displayWidth, int displayHeight) {
+        int invalidSection = Math.round(displayHeight*0.1f);
+
+        return new Rect(0, 0, displayWidth, displayHeight - invalidSection);
+    }
+
+    // Section above the Pokeball band, where the encounter target is
+    public static Rect getEncounterTargetSection(int displayWidth, int displayHeight) {
+        return new Rect(0, 0, displayWidth, getPokeballSection(displayWidth, displayHeight).top);
+    }
+
     // Calculates the x-coordinate at a given y-coordinate on a line defined by two points (x1, y1) and (x2, y2)
     public static float getXAtY(float x1, float y1, float x2, float y2, float yPrima) {
         if (y1 == y2) {
@@ -126,10 +126,13 @@ public class DialogHelper {
         dialog.show();
     }
 
-
-
-
-
-
-
+    // Show the model benchmark results, the positive button saves the fastest options
+    public static void benchmarkResults(Context context, String results, Runnable onApply){
+        MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(context);
+        builder.setTitle(context.getString(R.string.displayText_model_benchmark))
+                .setMessage(results)
+                .setPositiveButton(context.getString(R.string.displayText_apply_best), (dialog, which) -> onApply.run())
+                .setNegativeButton(context.getString(R.string.displayText_later), null);
+        builder.create().show();
+    }
 }
@@ -0,0 +1,70 @@
+package com.juancavr6.regibot.capture;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Signature comparison of FrameChangeDetector, on signatures built by hand (24x48 luma cells).
+ */
+public class FrameChangeDetectorTest {
+
+    private static final int WIDTH = 24;
+    private static final int HEIGHT = 48;
+
+    private final int[] bounds = new int[4];
+
+    @Test
+    public void sameSignatureIsUnchanged() {
+        int[] background = background();
+        int changed = FrameChangeDetector.changedCells(background, background.clone(), bounds);
+        assertEquals(0, changed);
+        assertEquals(FrameChangeDetector.UNCHANGED, FrameChangeDetector.classify(changed, bounds));
+    }
+
+    @Test
+    public void smallMovingObjectIsLookedAtAgain() {
+        // A map Pokemon of about one cell moving one cell to the right
+        int[] before = background();
+        int[] after = background();
+        before[cell(10, 20)] = 200;
+        after[cell(11, 20)] = 200;
+
+        int changed = FrameChangeDetector.changedCells(before, after, bounds);
+        assertEquals(2, changed);
+        assertEquals(FrameChangeDetector.PARTIAL, FrameChangeDetector.classify(changed, bounds));
+        // Both positions inside the changed cells, with the margin
+        assertTrue(bounds[0] <= 10 && bounds[2] >= 11);
+        assertTrue(bounds[1] <= 20 && bounds[3] >= 20);
+    }
+
+    @Test
+    public void noiseBelowTheCellThresholdIsUnchanged() {
+        int[] before = background();
+        int[] after = background();
+        for (int i = 0; i < after.length; i += 7) after[i] += 5;
+        int changed = FrameChangeDetector.changedCells(before, after, bounds);
+        assertEquals(FrameChangeDetector.UNCHANGED, FrameChangeDetector.classify(changed, bounds));
+    }
+
+    @Test
+    public void largeChangeIsChanged() {
+        int[] before = background();
+        int[] after = background();
+        for (int i = 0; i < after.length / 2; i++) after[i] = 250;
+        int changed = FrameChangeDetector.changedCells(before, after, bounds);
+        assertEquals(FrameChangeDetector.CHANGED, FrameChangeDetector.classify(changed, bounds));
+    }
+
+    private static int[] background() {
+        int[] signature = new int[WIDTH * HEIGHT];
+        Arrays.fill(signature, 90);
+        return signature;
+    }
+
+    private static int cell(int x, int y) {
+        return y * WIDTH + x;
+    }
+}
@@ -0,0 +1,91 @@
+package com.juancavr6.regibot.executor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CaptureTrigger timing on the JVM, events reported from another thread as the main thread does.
+ */
+public class CaptureTriggerTest {
+
+    private final CaptureTrigger trigger = new CaptureTrigger();
+
+    @Test
+    public void eventTriggersAfterTheMinimumInterval() throws Exception {
+        trigger.onEvent(CaptureTrigger.Cause.WINDOW_STATE); // During the last cycle
+        long start = System.nanoTime();
+        assertEquals(CaptureTrigger.Cause.WINDOW_STATE, trigger.awaitNext(100, 5000));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs >= 100 && elapsedMs < 1000);
+    }
+
+    @Test
+    public void eventWakesTheWaitRightAway() throws Exception {
+        report(CaptureTrigger.Cause.CONTENT_CHANGED, 200);
+        long start = System.nanoTime();
+        assertEquals(CaptureTrigger.Cause.CONTENT_CHANGED, trigger.awaitNext(50, 5000));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs >= 150 && elapsedMs < 1000);
+    }
+
+    @Test
+    public void staticScreenWaitsTheMaximumInterval() throws Exception {
+        long start = System.nanoTime();
+        assertEquals(CaptureTrigger.Cause.MAX_INTERVAL, trigger.awaitNext(50, 300));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs >= 300 && elapsedMs < 1000);
+    }
+
+    @Test
+    public void eventsAreCoalescedAndCounted() throws Exception {
+        trigger.onEvent(CaptureTrigger.Cause.CONTENT_CHANGED);
+        trigger.onEvent(CaptureTrigger.Cause.WINDOW_STATE);
+        trigger.onEvent(CaptureTrigger.Cause.CONTENT_CHANGED);
+        assertEquals(CaptureTrigger.Cause.CONTENT_CHANGED, trigger.awaitNext(0, 1000));
+        assertEquals(CaptureTrigger.Cause.MAX_INTERVAL, trigger.awaitNext(0, 50));
+
+        assertEquals(1, trigger.getFired(CaptureTrigger.Cause.CONTENT_CHANGED));
+        assertEquals(0, trigger.getFired(CaptureTrigger.Cause.WINDOW_STATE));
+        assertEquals(1, trigger.getFired(CaptureTrigger.Cause.MAX_INTERVAL));
+        assertTrue(trigger.report().endsWith("events=3"));
+    }
+
+    @Test
+    public void wakeEndsTheMinimumInterval() throws Exception {
+        Thread waker = new Thread(() -> {
+            sleep(100);
+            trigger.wake();
+        });
+        waker.start();
+        long start = System.nanoTime();
+        assertEquals(CaptureTrigger.Cause.WOKEN, trigger.awaitNext(5000, 10000));
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 1000);
+        waker.join();
+    }
+
+    @Test
+    public void clearedWakeDoesNotEndTheNextWait() throws Exception {
+        trigger.wake(); // Pausing while the cycle was not waiting
+        trigger.clearWake(); // Resumed
+        long start = System.nanoTime();
+        assertEquals(CaptureTrigger.Cause.MAX_INTERVAL, trigger.awaitNext(50, 200));
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 200);
+        assertEquals(0, trigger.getFired(CaptureTrigger.Cause.WOKEN));
+    }
+
+    private void report(CaptureTrigger.Cause cause, long delayMs) {
+        new Thread(() -> {
+            sleep(delayMs);
+            trigger.onEvent(cause);
+        }).start();
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.juancavr6.regibot.executor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * LoopLifecycle on the JVM with a worker that spins like a cycle doing inference.
+ */
+public class LoopLifecycleTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final FakeWorker worker = new FakeWorker();
+    private final LoopLifecycle lifecycle = new LoopLifecycle(worker, "LoopLifecycleTest");
+
+    @After
+    public void tearDown() throws Exception {
+        worker.loading.countDown();
+        lifecycle.stop();
+        lifecycle.awaitStopped(TIMEOUT_MS);
+    }
+
+    @Test
+    public void pausedWorkerUsesNoCpu() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadCpuTimeSupported());
+        threads.setThreadCpuTimeEnabled(true);
+
+        worker.loading.countDown();
+        lifecycle.start();
+        lifecycle.resume();
+        awaitCycles(5);
+        Thread thread = lifecycle.getThread();
+
+        lifecycle.pause();
+        awaitParked(thread);
+        long before = threads.getThreadCpuTime(thread.getId());
+        Thread.sleep(500);
+        long used = threads.getThreadCpuTime(thread.getId()) - before;
+
+        assertEquals(LoopLifecycle.State.PAUSED, lifecycle.getState());
+        assertTrue("Paused worker used " + used + " ns of CPU", used < TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(1, worker.paused.get());
+    }
+
+    @Test
+    public void startTwiceKeepsOneWorker() throws Exception {
+        assertTrue(lifecycle.start());
+        Thread thread = lifecycle.getThread();
+        assertFalse(lifecycle.start());
+        assertSame(thread, lifecycle.getThread());
+
+        worker.loading.countDown();
+        lifecycle.resume();
+        awaitCycles(3);
+        assertFalse(lifecycle.start());
+        assertSame(thread, lifecycle.getThread());
+        assertEquals(1, worker.loads.get());
+    }
+
+    @Test
+    public void resumeWhileLoadingRunsOnceLoaded() throws Exception {
+        lifecycle.start();
+        lifecycle.resume();
+        assertEquals(LoopLifecycle.State.LOADING, lifecycle.getState());
+        worker.loading.countDown();
+        awaitCycles(1);
+        assertEquals(LoopLifecycle.State.RUNNING, lifecycle.getState());
+    }
+
+    @Test
+    public void loadedLoopWaitsPaused() throws Exception {
+        lifecycle.start();
+        worker.loading.countDown();
+        awaitParked(lifecycle.getThread());
+        assertEquals(LoopLifecycle.State.PAUSED, lifecycle.getState());
+        assertEquals(0, worker.cycles.get());
+    }
+
+    @Test
+    public void stopReleasesOnTheWorker() throws Exception {
+        worker.loading.countDown();
+        lifecycle.start();
+        lifecycle.resume();
+        awaitCycles(2);
+        Thread thread = lifecycle.getThread();
+
+        lifecycle.stop();
+        lifecycle.stop();
+        assertTrue(lifecycle.awaitStopped(TIMEOUT_MS));
+
+        assertEquals(LoopLifecycle.State.STOPPED, lifecycle.getState());
+        assertNull(lifecycle.getThread());
+        assertEquals(1, worker.releases.get());
+        assertSame(thread, worker.releasedOn);
+    }
+
+    @Test
+    public void stopWhilePausedReleases() throws Exception {
+        worker.loading.countDown();
+        lifecycle.start();
+        awaitParked(lifecycle.getThread());
+
+        lifecycle.stop();
+        assertTrue(lifecycle.awaitStopped(TIMEOUT_MS));
+        assertEquals(1, worker.releases.get());
+        assertEquals(0, worker.cycles.get());
+    }
+
+    @Test
+    public void startAfterStopLoadsAgain() throws Exception {
+        worker.loading.countDown();
+        lifecycle.start();
+        lifecycle.stop();
+        assertTrue(lifecycle.awaitStopped(TIMEOUT_MS));
+
+        assertTrue(lifecycle.start());
+        awaitParked(lifecycle.getThread());
+        assertEquals(2, worker.loads.get());
+        assertEquals(1, worker.releases.get());
+    }
+
+    @Test
+    public void cycleThatThrowsReleasesAndStops() throws Exception {
+        worker.loading.countDown();
+        worker.failAtCycle = 3;
+        lifecycle.start();
+        lifecycle.resume();
+        Thread thread = lifecycle.getThread();
+
+        assertTrue(lifecycle.awaitStopped(TIMEOUT_MS));
+        assertEquals(LoopLifecycle.State.STOPPED, lifecycle.getState());
+        assertEquals(2, worker.cycles.get());
+        assertTrue(worker.failure instanceof IllegalStateException);
+        assertEquals(1, worker.releases.get());
+        assertSame(thread, worker.releasedOn);
+    }
+
+    @Test
+    public void loadThatThrowsReleases() throws Exception {
+        worker.loading.countDown();
+        worker.failLoad = true;
+        lifecycle.start();
+        lifecycle.resume();
+
+        assertTrue(lifecycle.awaitStopped(TIMEOUT_MS));
+        assertEquals(LoopLifecycle.State.STOPPED, lifecycle.getState());
+        assertNotNull(worker.failure);
+        assertEquals(1, worker.releases.get());
+        assertEquals(0, worker.cycles.get());
+
+        // A failed loop can be started again
+        worker.failLoad = false;
+        assertTrue(lifecycle.start());
+        lifecycle.resume();
+        awaitCycles(1);
+        assertEquals(2, worker.loads.get());
+    }
+
+    private void awaitCycles(int cycles) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (worker.cycles.get() < cycles) {
+            assertTrue("No cycle ran", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("Worker not parked", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static class FakeWorker implements LoopLifecycle.Worker {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicInteger cycles = new AtomicInteger();
+        final AtomicInteger paused = new AtomicInteger();
+        final AtomicInteger releases = new AtomicInteger();
+        final AtomicInteger concurrent = new AtomicInteger();
+        volatile Thread releasedOn;
+        volatile int failAtCycle;   // Cycle that throws, 0 for none
+        volatile boolean failLoad;
+        volatile RuntimeException failure;
+
+        @Override
+        public void load() {
+            loads.incrementAndGet();
+            try {
+                loading.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failLoad) throw new IllegalArgumentException("Model failed to load");
+        }
+
+        @Override
+        public void runCycle() {
+            if (failAtCycle > 0 && cycles.get() + 1 == failAtCycle) throw new IllegalStateException("Frame released twice");
+            if (concurrent.incrementAndGet() > 1) throw new IllegalStateException("Two workers");
+            // Burn CPU for a millisecond, like inference
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1);
+            while (System.nanoTime() < end) Thread.onSpinWait();
+            cycles.incrementAndGet();
+            concurrent.decrementAndGet();
+        }
+
+        @Override
+        public void onPaused() {
+            paused.incrementAndGet();
+        }
+
+        @Override
+        public void release() {
+            releases.incrementAndGet();
+            releasedOn = Thread.currentThread();
+        }
+
+        @Override
+        public void onFailure(RuntimeException e) {
+            failure = e;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.juancavr6.regibot.ml;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * TfliteModel on a minimal model FlatBuffer laid out by hand: one subgraph with two tensors, the second
+ * being the input.
+ */
+public class TfliteModelTest {
+
+    @Test
+    public void readsTheShapeOfTheInputTensor() {
+        assertArrayEquals(new int[]{1, 192, 320, 3}, TfliteModel.inputShape(model(true)));
+    }
+
+    @Test
+    public void readsFromTheStartOfTheBuffer() {
+        ByteBuffer model = model(true);
+        model.position(100); // A mapped model is read whatever its position
+        assertArrayEquals(new int[]{1, 192, 320, 3}, TfliteModel.inputShape(model));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherFiles() {
+        TfliteModel.inputShape(model(false));
+    }
+
+    private static ByteBuffer model(boolean identifier) {
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        reference(buffer, 0, 40);
+        if (identifier) buffer.put(4, (byte) 'T').put(5, (byte) 'F').put(6, (byte) 'L').put(7, (byte) '3');
+
+        vtable(buffer, 8, 8, 0, 0, 4);  // Model: subgraphs
+        vtable(buffer, 20, 12, 4, 8);   // SubGraph: tensors, inputs
+        vtable(buffer, 32, 8, 4);       // Tensor: shape
+
+        table(buffer, 40, 8);
+        reference(buffer, 44, 48);
+        vector(buffer, 48, 0);          // Subgraphs, the entry patched below
+        reference(buffer, 52, 56);
+
+        table(buffer, 56, 20);
+        reference(buffer, 60, 80);
+        reference(buffer, 64, 100);
+
+        vector(buffer, 80, 0, 0);       // Tensors, the entries patched below
+        reference(buffer, 84, 120);
+        reference(buffer, 88, 140);
+        vector(buffer, 100, 1);         // Inputs
+
+        table(buffer, 120, 32);
+        reference(buffer, 124, 160);
+        table(buffer, 140, 32);
+        reference(buffer, 144, 180);
+        vector(buffer, 160, 1, 10);
+        vector(buffer, 180, 1, 192, 320, 3);
+        return buffer;
+    }
+
+    private static void vtable(ByteBuffer buffer, int position, int tableSize, int... fields) {
+        buffer.putShort(position, (short) (4 + 2 * fields.length));
+        buffer.putShort(position + 2, (short) tableSize);
+        for (int i = 0; i < fields.length; i++) buffer.putShort(position + 4 + 2 * i, (short) fields[i]);
+    }
+
+    private static void table(ByteBuffer buffer, int position, int vtable) {
+        buffer.putInt(position, position - vtable);
+    }
+
+    private static void reference(ByteBuffer buffer, int position, int target) {
+        buffer.putInt(position, target - position);
+    }
+
+    private static void vector(ByteBuffer buffer, int position, int... values) {
+        buffer.putInt(position, values.length);
+        for (int i = 0; i < values.length; i++) buffer.putInt(position + 4 + 4 * i, values[i]);
+    }
+}
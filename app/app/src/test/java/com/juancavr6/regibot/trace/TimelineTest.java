@@ -0,0 +1,83 @@
+package com.juancavr6.regibot.trace;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Timeline export on the JVM, as it runs off the device.
+ */
+public class TimelineTest {
+
+    @After
+    public void tearDown() {
+        Timeline.stop();
+    }
+
+    @Test
+    public void exportsCyclesAndSpansAsChromeTrace() throws Exception {
+        Timeline.start(64);
+        assertEquals(1, Timeline.beginCycle());
+        Timeline.span("classify", Latency.start());
+
+        // A span started on the loop and recorded on another thread, like a capture callback
+        final long requested = Latency.start();
+        Thread callback = new Thread(() -> Timeline.asyncSpan("capture", requested), "main");
+        callback.start();
+        callback.join();
+
+        assertEquals(2, Timeline.beginCycle());
+        Latency.record(Latency.Stage.PREDICT, Latency.start());
+        Timeline.stop();
+
+        StringWriter json = new StringWriter();
+        Timeline.export(json);
+        String trace = json.toString();
+
+        assertTrue(trace.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertTrue(trace.trim().endsWith("]}"));
+        assertTrue(trace.contains("\"name\":\"classify\",\"cat\":\"loop\""));
+        assertTrue(trace.contains("\"ph\":\"b\""));
+        assertTrue(trace.contains("\"ph\":\"e\""));
+        assertTrue(trace.contains("\"name\":\"predict\""));
+        assertTrue(trace.contains("\"args\":{\"name\":\"main\"}"));
+        assertTrue(trace.contains("\"args\":{\"cycle\":1}"));
+        assertTrue(trace.contains("\"args\":{\"cycle\":2}"));
+        assertEquals(count(trace, '{'), count(trace, '}'));
+    }
+
+    @Test
+    public void keepsNewestSpansWhenFull() throws Exception {
+        Timeline.start(4);
+        for (int i = 0; i < 10; i++) Timeline.span("span" + i, Latency.start());
+        Timeline.stop();
+
+        StringWriter json = new StringWriter();
+        Timeline.export(json);
+        String trace = json.toString();
+
+        assertEquals(10, Timeline.getCount());
+        assertFalse(trace.contains("\"span5\""));
+        assertTrue(trace.contains("\"span6\""));
+        assertTrue(trace.contains("\"span9\""));
+        assertTrue(trace.contains("\"args\":{\"cycle\":-1}"));
+    }
+
+    @Test
+    public void recordsNothingWhenStopped() {
+        Timeline.start(4);
+        Timeline.stop();
+        Timeline.span("ignored", Latency.start());
+        assertEquals(-1, Timeline.beginCycle());
+        assertEquals(0, Timeline.getCount());
+    }
+
+    private static int count(String text, char c) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) if (text.charAt(i) == c) count++;
+        return count;
+    }
+}